@@ -0,0 +1,87 @@
+package com.ecommerce.api;
+
+import com.ecommerce.benchmark.BenchmarkData;
+import com.ecommerce.cart.ShoppingCart;
+import com.ecommerce.model.Product;
+import com.ecommerce.strategy.PercentageDiscountStrategy;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+//JSON bodies of GET /api/products and GET /api/cart, written the way ECommerceServer writes them.
+//Lives in the api package to reach the package-private writers. Returns the body size in bytes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    @Param({"10", "100"})
+    public int cartLines;
+
+    private List<Product> catalog;
+    private List<Product> page;
+    private ECommerceServer.CartView cart;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = BenchmarkData.products(catalogSize, 42);
+        page = catalog.subList(0, Math.min(20, catalog.size()));
+        ShoppingCart shoppingCart = new ShoppingCart();
+        for (int i = 0; i < cartLines; i++) {
+            shoppingCart.addItem(catalog.get(i), 1 + i % 3);
+        }
+        shoppingCart.setDiscountStrategy(new PercentageDiscountStrategy(10));
+        cart = new ECommerceServer.CartView(shoppingCart);
+    }
+
+    // Full catalog: what a cache rebuild or a streamed response costs
+    @Benchmark
+    public int catalog() throws IOException {
+        out.reset();
+        try (JsonWriter writer = writer()) {
+            CatalogResponseCache.writeCatalog(writer, catalog);
+        }
+        return out.size();
+    }
+
+    // One filtered page of the default size
+    @Benchmark
+    public int catalogPage() throws IOException {
+        out.reset();
+        try (JsonWriter writer = writer()) {
+            CatalogResponseCache.writeCatalog(writer, page);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int cart() throws IOException {
+        out.reset();
+        try (JsonWriter writer = writer()) {
+            cart.write(writer);
+        }
+        return out.size();
+    }
+
+    private JsonWriter writer() {
+        return new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,32 @@
+package com.ecommerce.benchmark;
+
+import com.ecommerce.factory.ProductFactory;
+import com.ecommerce.model.Product;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+//Synthetic catalogs shared by the benchmarks; the same seed always gives the same catalog
+public final class BenchmarkData {
+    private static final String[] TYPES = {"electronics", "clothing", "book", "general"};
+    private static final String[] COLORS = {"Black", "White", "Blue", "Red", "Green"};
+    private static final String[] WORDS = {"Smart", "Classic", "Travel", "Pro", "Mini", "Ultra", "Home", "Sport"};
+    private static final String[] NOUNS = {"Phone", "Shirt", "Guide", "Lamp", "Laptop", "Jacket", "Novel", "Kettle"};
+
+    private BenchmarkData() {
+    }
+
+    public static List<Product> products(int count, long seed) {
+        Random random = new Random(seed);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + NOUNS[random.nextInt(NOUNS.length)] + " " + i;
+            Map<String, String> configs = Map.of("color", COLORS[random.nextInt(COLORS.length)]);
+            // Plenty of stock so checkout benchmarks never sell out mid-run
+            products.add(ProductFactory.createProduct(TYPES[random.nextInt(TYPES.length)],
+                String.format("P%07d", i), name, 500 + random.nextInt(200_000), Integer.MAX_VALUE / 4, configs));
+        }
+        return products;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ecommerce.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Entry point for `mvn -Pbenchmarks verify`. Takes the usual JMH command line; with
+//-Djmh.threads=1,4,16 the selected benchmarks are run once per thread count and every run
+//lands in one result file (each result records its thread count).
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String threads = System.getProperty("jmh.threads", "").trim();
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (threads.isEmpty() || options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        List<RunResult> results = new ArrayList<>();
+        for (String count : threads.split(",")) {
+            results.addAll(run(options, Integer.parseInt(count.trim())));
+        }
+        // Each run wrote only its own results; replace the file with all of them
+        if (options.getResult().hasValue()) {
+            ResultFormatType format = options.getResultFormat().orElse(ResultFormatType.CSV);
+            ResultFormatFactory.getInstance(format, options.getResult().get()).writeOut(results);
+        }
+    }
+
+    private static Collection<RunResult> run(CommandLineOptions options, int threads) throws Exception {
+        return new Runner(new OptionsBuilder().parent(options).threads(threads).build()).run();
+    }
+}
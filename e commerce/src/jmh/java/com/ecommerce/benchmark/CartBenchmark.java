@@ -0,0 +1,100 @@
+package com.ecommerce.benchmark;
+
+import com.ecommerce.cart.ShoppingCart;
+import com.ecommerce.model.Product;
+import com.ecommerce.strategy.PercentageDiscountStrategy;
+import com.ecommerce.strategy.PromotionPlan;
+import com.ecommerce.strategy.PromotionRule;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+//ShoppingCart operations on a cart of `lines` lines. Each thread has its own cart, like a session.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class CartBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    public int lines;
+
+    @Param({"none", "percentage", "stacked"})
+    public String discount;
+
+    private ShoppingCart cart;
+    private Product[] products;
+    private PromotionPlan plan;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Product> catalog = BenchmarkData.products(lines + 1, 42);
+        products = catalog.toArray(new Product[0]);
+        cart = new ShoppingCart();
+        for (int i = 0; i < lines; i++) {
+            cart.addItem(products[i], 1 + i % 5);
+        }
+        switch (discount) {
+            case "percentage":
+                cart.setDiscountStrategy(new PercentageDiscountStrategy(10));
+                break;
+            case "stacked":
+                plan = PromotionPlan.compile(List.of(
+                    PromotionRule.percentage(10).category("Books").build(),
+                    PromotionRule.bulk(5, 3).build(),
+                    PromotionRule.cartFixed(1000, 10_000).build()));
+                cart.setDiscountStrategy(plan);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // What GET /api/cart reads
+    @Benchmark
+    public long readTotals() {
+        return cart.getSubtotal() + cart.calculateDiscount() + cart.calculateTotal();
+    }
+
+    // PUT /api/cart on an existing line
+    @Benchmark
+    public long updateQuantity() {
+        Product product = products[next++ % lines];
+        cart.updateQuantity(product.getId(), 1 + next % 5);
+        return cart.calculateTotal();
+    }
+
+    // POST then DELETE of a line that isn't in the cart yet
+    @Benchmark
+    public long addAndRemove() {
+        Product extra = products[lines];
+        cart.addItem(extra, 2);
+        long total = cart.calculateTotal();
+        cart.removeItem(extra.getId());
+        return total;
+    }
+
+    // Price change reaching the cart through CartObserver
+    @Benchmark
+    public long priceChange() {
+        Product product = products[next++ % lines];
+        cart.updateProductPrice(product.getId(), product.getBasePrice() + (next & 1));
+        return cart.calculateTotal();
+    }
+
+    // POST /api/discount: every line is recomputed
+    @Benchmark
+    public long applyDiscount() {
+        cart.setDiscountStrategy(plan != null ? plan : new PercentageDiscountStrategy(10));
+        return cart.calculateTotal();
+    }
+}
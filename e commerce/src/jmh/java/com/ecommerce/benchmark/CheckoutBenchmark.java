@@ -0,0 +1,111 @@
+package com.ecommerce.benchmark;
+
+import com.ecommerce.cart.CartStore;
+import com.ecommerce.facade.ECommerceFacade;
+import com.ecommerce.model.Order;
+import com.ecommerce.model.Product;
+import com.ecommerce.service.EmailOutbox;
+import com.ecommerce.service.EmailService;
+import com.ecommerce.service.LocalSmtpServer;
+import com.ecommerce.service.OrderJournal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+//Filling a cart and checking it out through ECommerceFacade: stock reservation, payment,
+//a durable order journal write and a queued confirmation email to a LocalSmtpServer sink.
+//Run with several threads (jmh.threads) to see concurrent checkouts share journal flushes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shop {
+        @Param({"1000", "100000"})
+        public int catalogSize;
+
+        @Param({"1", "10"})
+        public int cartLines;
+
+        ECommerceFacade facade;
+        Product[] products;
+        private LocalSmtpServer smtp;
+        private Path journalDir;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            smtp = new LocalSmtpServer(0);
+            EmailService.configure("shop@localhost", null, "localhost", String.valueOf(smtp.getPort()));
+            EmailService.configureSecurity(false, false);
+            journalDir = Files.createTempDirectory("checkout-bench");
+            facade = new ECommerceFacade(new CartStore(), new EmailOutbox(new EmailService()), new OrderJournal(journalDir));
+            List<Product> catalog = BenchmarkData.products(catalogSize, 42);
+            for (Product product : catalog) {
+                facade.addProduct(product);
+            }
+            products = catalog.toArray(new Product[0]);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            facade.shutdown();
+            smtp.stop();
+            try (Stream<Path> files = Files.walk(journalDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        String sessionId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sessionId = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public Order checkout(Shop shop, Session session) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < shop.cartLines; i++) {
+            Product product = shop.products[random.nextInt(shop.products.length)];
+            shop.facade.addToCart(session.sessionId, product.getId(), 1);
+        }
+        return shop.facade.checkout(session.sessionId, "bench@localhost", "creditcard", "4111111111111111");
+    }
+
+    // Cart mutations alone, for comparison: the lines are added and removed again
+    @Benchmark
+    public int fillCart(Shop shop, Session session) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int added = 0;
+        for (int i = 0; i < shop.cartLines; i++) {
+            Product product = shop.products[random.nextInt(shop.products.length)];
+            if (shop.facade.addToCart(session.sessionId, product.getId(), 1)) {
+                shop.facade.removeFromCart(session.sessionId, product.getId());
+                added++;
+            }
+        }
+        return added;
+    }
+}
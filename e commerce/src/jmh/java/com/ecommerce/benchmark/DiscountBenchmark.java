@@ -0,0 +1,125 @@
+package com.ecommerce.benchmark;
+
+import com.ecommerce.strategy.BulkDiscountStrategy;
+import com.ecommerce.strategy.DiscountStrategy;
+import com.ecommerce.strategy.FixedAmountDiscountStrategy;
+import com.ecommerce.strategy.PercentageDiscountStrategy;
+import com.ecommerce.strategy.PromotionPlan;
+import com.ecommerce.strategy.PromotionRule;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+//Discounting a whole cart: strategy objects called per line against the compiled promotion plan.
+//Each benchmark returns the cart's total discount, in operations (carts) per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class DiscountBenchmark {
+    private static final String[] CATEGORIES = {"Electronics", "Clothing", "Books", "General"};
+
+    @Param({"10", "100", "1000"})
+    public int lines;
+
+    private long[] prices;
+    private int[] quantities;
+    private String[] categories;
+
+    private DiscountStrategy single;
+    private DiscountStrategy[] strategies;
+    private PromotionPlan percentagePlan;
+    private PromotionPlan stackedPlan;
+    private PromotionPlan categoryPlan;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        prices = new long[lines];
+        quantities = new int[lines];
+        categories = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            prices[i] = 500 + random.nextInt(50_000);
+            quantities[i] = 1 + random.nextInt(6);
+            categories[i] = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        }
+
+        single = new PercentageDiscountStrategy(10);
+        // Three classes behind one call site, as a stack of strategies would be
+        strategies = new DiscountStrategy[] {
+            new PercentageDiscountStrategy(10),
+            new FixedAmountDiscountStrategy(100),
+            new BulkDiscountStrategy(3, 5)
+        };
+        percentagePlan = PromotionPlan.of(single);
+        stackedPlan = PromotionPlan.compile(List.of(
+            PromotionRule.percentage(10).build(),
+            PromotionRule.fixed(100).build(),
+            PromotionRule.bulk(5, 3).build()));
+        categoryPlan = PromotionPlan.compile(List.of(
+            PromotionRule.percentage(10).build(),
+            PromotionRule.fixed(100).category("Books").build(),
+            PromotionRule.bulk(5, 3).build(),
+            PromotionRule.cartPercentage(5, 10_000).build()));
+    }
+
+    @Benchmark
+    public long singleStrategy() {
+        long discount = 0;
+        for (int i = 0; i < lines; i++) {
+            discount += single.calculateDiscount(prices[i], quantities[i]);
+        }
+        return discount;
+    }
+
+    @Benchmark
+    public long singlePlan() {
+        long discount = 0;
+        for (int i = 0; i < lines; i++) {
+            discount += percentagePlan.lineDiscount(prices[i], quantities[i], null);
+        }
+        return discount;
+    }
+
+    // Stacking by hand: every strategy sees the original price and nothing is clamped
+    @Benchmark
+    public long stackedStrategies() {
+        long discount = 0;
+        for (int i = 0; i < lines; i++) {
+            for (DiscountStrategy strategy : strategies) {
+                discount += strategy.calculateDiscount(prices[i], quantities[i]);
+            }
+        }
+        return discount;
+    }
+
+    @Benchmark
+    public long stackedPlan() {
+        long discount = 0;
+        for (int i = 0; i < lines; i++) {
+            discount += stackedPlan.lineDiscount(prices[i], quantities[i], null);
+        }
+        return discount;
+    }
+
+    @Benchmark
+    public long categoryAndCartPlan() {
+        long subtotal = 0;
+        long discount = 0;
+        for (int i = 0; i < lines; i++) {
+            subtotal += prices[i] * quantities[i];
+            discount += categoryPlan.lineDiscount(prices[i], quantities[i], categories[i]);
+        }
+        return discount + categoryPlan.cartDiscount(subtotal - discount);
+    }
+}
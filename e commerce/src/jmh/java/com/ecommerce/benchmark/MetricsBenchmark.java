@@ -0,0 +1,55 @@
+package com.ecommerce.benchmark;
+
+import com.ecommerce.metrics.Counter;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+//What a request pays for metrics: one histogram record and one counter increment on series shared
+//by every thread, as HttpMetricsFilter does. Run with several threads (jmh.threads) for contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class MetricsBenchmark {
+    private MetricsRegistry registry;
+    private LatencyHistogram histogram;
+    private Counter counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new MetricsRegistry();
+        histogram = registry.histogram("bench_duration_seconds", "Benchmark latency", "path", "/api/cart");
+        counter = registry.counter("bench_requests_total", "Benchmark requests", "path", "/api/cart", "status", "2xx");
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(ThreadLocalRandom.current().nextLong(50_000, 50_000_000));
+        }
+    }
+
+    // Both clock reads included; the start is backdated so latencies spread over 50 µs to 5 ms
+    @Benchmark
+    public void recordRequest() {
+        long start = System.nanoTime() - ThreadLocalRandom.current().nextLong(50_000, 5_000_000);
+        histogram.recordSince(start);
+        counter.increment();
+    }
+
+    @Benchmark
+    public int scrape() throws IOException {
+        StringWriter out = new StringWriter(4096);
+        registry.writeTo(out);
+        return out.getBuffer().length();
+    }
+}
@@ -0,0 +1,58 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.metrics.LatencyHistogram;
+import java.util.concurrent.atomic.LongAdder;
+
+//Latencies and response classes of one endpoint during the measured part of a run
+final class EndpointStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // 2xx and 3xx count as success; every answered request goes into the latency histogram
+    void record(int status, long nanos) {
+        latency.record(nanos);
+        if (status < 400) {
+            succeeded.increment();
+        } else if (status < 500) {
+            clientErrors.increment();
+        } else {
+            serverErrors.increment();
+        }
+    }
+
+    // Connection errors and timeouts: no status and no meaningful latency
+    void recordFailure() {
+        failures.increment();
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    long getRequests() {
+        return latency.getCount() + failures.sum();
+    }
+
+    long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    long getClientErrors() {
+        return clientErrors.sum();
+    }
+
+    long getServerErrors() {
+        return serverErrors.sum();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    long getErrors() {
+        return clientErrors.sum() + serverErrors.sum() + failures.sum();
+    }
+}
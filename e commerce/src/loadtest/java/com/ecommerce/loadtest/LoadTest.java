@@ -0,0 +1,270 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.adapter.GuardedPaymentAdapter;
+import com.ecommerce.adapter.StubPaymentGateway;
+import com.ecommerce.api.ECommerceServer;
+import com.ecommerce.cart.CartStore;
+import com.ecommerce.facade.ECommerceFacade;
+import com.ecommerce.factory.ProductFactory;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.service.EmailOutbox;
+import com.ecommerce.service.EmailService;
+import com.ecommerce.service.LocalSmtpServer;
+import com.ecommerce.service.OrderJournal;
+import com.google.gson.GsonBuilder;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//Boots ECommerceServer in-process on a free port, with a stub payment gateway, a LocalSmtpServer
+//sink and a throwaway order journal, drives it with concurrent clients and reports throughput and
+//latency percentiles per endpoint. Run with: mvn -Ploadtest verify -Dloadtest.args="clients=64"
+public class LoadTest {
+    private static final String[] TYPES = {"electronics", "clothing", "book", "general"};
+    private static final String[] COLORS = {"Black", "White", "Blue", "Red", "Green"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+    private final LoadTestConfig config;
+    private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+
+    public LoadTest(LoadTestConfig config) {
+        this.config = config;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromArgs(args);
+        new LoadTest(config).run();
+    }
+
+    public void run() throws Exception {
+        PrintStream console = System.out;
+        PrintStream consoleErr = System.err;
+        Path serverLog = Paths.get(config.getServerLog());
+        Files.createDirectories(serverLog.toAbsolutePath().getParent());
+        Path journalDir = Files.createTempDirectory("loadtest-journal");
+        LocalSmtpServer smtp = new LocalSmtpServer(0, config.getSmtpDelayMillis());
+        StubPaymentGateway gateway = config.toStubGateway();
+        ECommerceServer server = null;
+        ExecutorService clients = null;
+
+        console.println("Load test: " + config.getClients() + " clients, " + config.getWarmupSeconds() + "s warmup, "
+            + config.getDurationSeconds() + "s measured, " + (config.getRate() > 0 ? config.getRate() + " req/s" : "closed loop")
+            + ", " + config.getCatalogSize() + " products, server log in " + serverLog);
+        try (PrintStream log = new PrintStream(new FileOutputStream(serverLog.toFile()), true, StandardCharsets.UTF_8)) {
+            // Server log lines (stock and price changes at DEBUG, emails, startup) go to a file, not the report
+            System.setOut(log);
+            System.setErr(log);
+
+            EmailService.configure("shop@loadtest.local", null, "localhost", String.valueOf(smtp.getPort()));
+            EmailService.configureSecurity(false, false);
+            ECommerceFacade facade = new ECommerceFacade(new CartStore(), new EmailOutbox(new EmailService()),
+                                                         new OrderJournal(journalDir));
+            // One guard for both methods, so they share the bulkhead and the circuit breaker
+            GuardedPaymentAdapter payments = new GuardedPaymentAdapter(gateway, config.toPaymentPolicy());
+            facade.registerPaymentAdapter("creditcard", payments);
+            facade.registerPaymentAdapter("paypal", payments);
+            String[] productIds = loadCatalog(facade, config.getCatalogSize());
+
+            server = new ECommerceServer(config.toServerConfig(), facade);
+            server.start();
+            String baseUrl = "http://localhost:" + server.getPort();
+
+            HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+            clients = Executors.newFixedThreadPool(config.getClients(), r -> {
+                Thread t = new Thread(r, "loadtest-client");
+                t.setDaemon(true);
+                return t;
+            });
+            long startAt = System.nanoTime();
+            long measureFrom = startAt + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+            long endAt = measureFrom + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+            for (int i = 0; i < config.getClients(); i++) {
+                clients.execute(new VirtualClient(i, http, baseUrl, config, stats, productIds, startAt, measureFrom, endAt));
+            }
+            clients.shutdown();
+            // Requests still in flight at the end get up to the request timeout to finish
+            if (!clients.awaitTermination(config.getWarmupSeconds() + config.getDurationSeconds() + 60L, TimeUnit.SECONDS)) {
+                clients.shutdownNow();
+            }
+            long measuredNanos = Math.min(System.nanoTime(), endAt) - measureFrom;
+            saveServerMetrics(http, baseUrl);
+
+            server.stop();
+            server = null;
+            System.setOut(console);
+            System.setErr(consoleErr);
+
+            Map<String, Object> report = report(measuredNanos, facade, smtp, gateway);
+            printReport(console, measuredNanos, report);
+            writeReport(report);
+        } finally {
+            System.setOut(console);
+            System.setErr(consoleErr);
+            if (clients != null) {
+                clients.shutdownNow();
+            }
+            if (server != null) {
+                server.stop();
+            }
+            smtp.stop();
+            gateway.shutdown();
+            deleteDirectory(journalDir);
+        }
+    }
+
+    // Plenty of stock, so a long run never turns checkouts into 409s
+    private static String[] loadCatalog(ECommerceFacade facade, int size) {
+        Random random = new Random(42);
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = String.format("L%06d", i);
+            facade.addProduct(ProductFactory.createProduct(TYPES[random.nextInt(TYPES.length)], ids[i],
+                "Load Test Product " + i, 500 + random.nextInt(200_000), 1_000_000_000,
+                Map.of("color", COLORS[random.nextInt(COLORS.length)])));
+        }
+        return ids;
+    }
+
+    private Map<String, Object> report(long measuredNanos, ECommerceFacade facade, LocalSmtpServer smtp,
+                                       StubPaymentGateway gateway) {
+        double seconds = measuredNanos / 1e9;
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("clients", config.getClients());
+        settings.put("warmupSeconds", config.getWarmupSeconds());
+        settings.put("durationSeconds", config.getDurationSeconds());
+        settings.put("rate", config.getRate());
+        settings.put("catalogSize", config.getCatalogSize());
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        config.getMix().forEach((operation, weight) -> mix.put(operation.getKey(), weight));
+        settings.put("mix", mix);
+        settings.put("paymentLatencyMillis", config.getPaymentLatencyMillis());
+        settings.put("paymentJitterMillis", config.getPaymentJitterMillis());
+        settings.put("paymentFailureRate", config.getPaymentFailureRate());
+        settings.put("paymentErrorRate", config.getPaymentErrorRate());
+        settings.put("paymentTimeoutMillis", config.getPaymentTimeoutMillis());
+        settings.put("paymentMaxInFlight", config.getPaymentMaxInFlight());
+        settings.put("smtpDelayMillis", config.getSmtpDelayMillis());
+        settings.put("executor", config.getExecutorMode().name());
+        settings.put("workers", config.getWorkerThreads());
+        settings.put("queue", config.getQueueCapacity());
+        report.put("config", settings);
+
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<Operation, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpoint = entry.getValue();
+            if (endpoint.getRequests() == 0) {
+                continue;
+            }
+            requests += endpoint.getRequests();
+            errors += endpoint.getErrors();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("endpoint", entry.getKey().getLabel());
+            row.put("requests", endpoint.getRequests());
+            row.put("throughput", endpoint.getRequests() / seconds);
+            row.put("succeeded", endpoint.getSucceeded());
+            row.put("clientErrors", endpoint.getClientErrors());
+            row.put("serverErrors", endpoint.getServerErrors());
+            row.put("failures", endpoint.getFailures());
+            row.put("latencyMillis", latency(endpoint.getLatency()));
+            endpoints.add(row);
+        }
+        report.put("endpoints", endpoints);
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("requests", requests);
+        totals.put("throughput", requests / seconds);
+        totals.put("errors", errors);
+        totals.put("orders", facade.getOrderCount());
+        totals.put("paymentsApproved", gateway.getApproved());
+        totals.put("paymentsDeclined", gateway.getDeclined());
+        totals.put("paymentErrors", gateway.getErrors());
+        totals.put("emailsDelivered", smtp.getMessagesReceived());
+        totals.put("logRecordsDropped", Logger.getDroppedCount());
+        report.put("totals", totals);
+        return report;
+    }
+
+    private static Map<String, Object> latency(LatencyHistogram histogram) {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", histogram.getMean() / 1e6);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            latency.put(PERCENTILE_NAMES[i], histogram.valueAtPercentile(PERCENTILES[i]) / 1e6);
+        }
+        latency.put("max", histogram.getMax() / 1e6);
+        return latency;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(PrintStream out, long measuredNanos, Map<String, Object> report) {
+        out.printf("%nMeasured %.1f s%n", measuredNanos / 1e9);
+        out.printf("%-26s %9s %9s %7s %9s %9s %9s %9s %9s%n",
+            "Endpoint", "Requests", "Req/s", "Errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map<String, Object> row : (List<Map<String, Object>>) report.get("endpoints")) {
+            Map<String, Object> latency = (Map<String, Object>) row.get("latencyMillis");
+            long errors = (long) row.get("clientErrors") + (long) row.get("serverErrors") + (long) row.get("failures");
+            out.printf("%-26s %9d %9.1f %7d %9.3f %9.3f %9.3f %9.3f %9.3f%n", row.get("endpoint"), row.get("requests"),
+                row.get("throughput"), errors, latency.get("p50"), latency.get("p90"), latency.get("p99"),
+                latency.get("p99.9"), latency.get("max"));
+        }
+        Map<String, Object> totals = (Map<String, Object>) report.get("totals");
+        out.printf("%-26s %9d %9.1f %7d%n", "Total", totals.get("requests"), totals.get("throughput"), totals.get("errors"));
+        out.println("Orders: " + totals.get("orders") + ", payments approved/declined/errors: " + totals.get("paymentsApproved")
+            + "/" + totals.get("paymentsDeclined") + "/" + totals.get("paymentErrors")
+            + ", emails delivered: " + totals.get("emailsDelivered"));
+    }
+
+    // What the server itself measured, as scraped from /api/metrics
+    private void saveServerMetrics(HttpClient http, String baseUrl) throws IOException, InterruptedException {
+        Path file = Paths.get(config.getServerMetrics());
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/metrics")).GET().build();
+        http.send(request, HttpResponse.BodyHandlers.ofFile(file));
+    }
+
+    private void writeReport(Map<String, Object> report) throws IOException {
+        Path file = Paths.get(config.getReport());
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+        }
+        System.out.println("Report written to " + file);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
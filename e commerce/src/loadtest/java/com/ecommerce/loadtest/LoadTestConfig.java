@@ -0,0 +1,384 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.adapter.PaymentPolicy;
+import com.ecommerce.adapter.StubPaymentGateway;
+import com.ecommerce.api.ServerConfig;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+//Load test options, built with the same Builder style as ServerConfig
+public class LoadTestConfig {
+    static final String DEFAULT_MIX =
+        "products:20,query:15,cartGet:20,cartAdd:15,cartUpdate:8,cartRemove:5,discount:5,checkout:12";
+
+    private final int clients;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int rate;
+    private final int catalogSize;
+    private final Map<Operation, Integer> mix;
+    private final long paymentLatencyMillis;
+    private final long paymentJitterMillis;
+    private final double paymentFailureRate;
+    private final double paymentErrorRate;
+    private final long paymentTimeoutMillis;
+    private final int paymentMaxInFlight;
+    private final long smtpDelayMillis;
+    private final ServerConfig.ExecutorMode executorMode;
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final String report;
+    private final String serverLog;
+    private final String serverMetrics;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private LoadTestConfig(Builder builder) {
+        this.clients = builder.clients;
+        this.warmupSeconds = builder.warmupSeconds;
+        this.durationSeconds = builder.durationSeconds;
+        this.rate = builder.rate;
+        this.catalogSize = builder.catalogSize;
+        this.mix = new EnumMap<>(builder.mix);
+        this.paymentLatencyMillis = builder.paymentLatencyMillis;
+        this.paymentJitterMillis = builder.paymentJitterMillis;
+        this.paymentFailureRate = builder.paymentFailureRate;
+        this.paymentErrorRate = builder.paymentErrorRate;
+        this.paymentTimeoutMillis = builder.paymentTimeoutMillis;
+        this.paymentMaxInFlight = builder.paymentMaxInFlight;
+        this.smtpDelayMillis = builder.smtpDelayMillis;
+        this.executorMode = builder.executorMode;
+        this.workerThreads = builder.workerThreads;
+        this.queueCapacity = builder.queueCapacity;
+        this.report = builder.report;
+        this.serverLog = builder.serverLog;
+        this.serverMetrics = builder.serverMetrics;
+
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static class Builder {
+        private int clients = 32;
+        private int warmupSeconds = 5;
+        private int durationSeconds = 30;
+        private int rate = 0;
+        private int catalogSize = 1000;
+        private Map<Operation, Integer> mix = parseMix(DEFAULT_MIX);
+        private long paymentLatencyMillis = 0;
+        private long paymentJitterMillis = 0;
+        private double paymentFailureRate = 0;
+        private double paymentErrorRate = 0;
+        private long paymentTimeoutMillis = new PaymentPolicy.Builder().build().getTimeoutMillis();
+        private int paymentMaxInFlight = new PaymentPolicy.Builder().build().getMaxInFlight();
+        private long smtpDelayMillis = 0;
+        private ServerConfig.ExecutorMode executorMode = ServerConfig.ExecutorMode.PLATFORM;
+        private int workerThreads = new ServerConfig.Builder().build().getWorkerThreads();
+        private int queueCapacity = new ServerConfig.Builder().build().getQueueCapacity();
+        private String report = "target/loadtest-report.json";
+        private String serverLog = "target/loadtest-server.log";
+        private String serverMetrics = "target/loadtest-metrics.txt";
+
+        // Concurrent clients, each with its own cart session
+        public Builder clients(int clients) {
+            if (clients <= 0) {
+                throw new IllegalArgumentException("clients must be positive");
+            }
+            this.clients = clients;
+            return this;
+        }
+
+        // Traffic before measurement starts, so the JIT and connection pools settle
+        public Builder warmupSeconds(int warmupSeconds) {
+            if (warmupSeconds < 0) {
+                throw new IllegalArgumentException("warmup must not be negative");
+            }
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        public Builder durationSeconds(int durationSeconds) {
+            if (durationSeconds <= 0) {
+                throw new IllegalArgumentException("duration must be positive");
+            }
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        // Total requests per second spread over the clients, with latency measured from when each
+        // request was due so a stalled server isn't hidden; 0 sends the next request as soon as
+        // the last one answers
+        public Builder rate(int rate) {
+            if (rate < 0) {
+                throw new IllegalArgumentException("rate must not be negative");
+            }
+            this.rate = rate;
+            return this;
+        }
+
+        public Builder catalogSize(int catalogSize) {
+            if (catalogSize <= 0) {
+                throw new IllegalArgumentException("catalog must be positive");
+            }
+            this.catalogSize = catalogSize;
+            return this;
+        }
+
+        // Relative weights, e.g. "products:30,cartAdd:20,checkout:10"
+        public Builder mix(String mix) {
+            this.mix = parseMix(mix);
+            return this;
+        }
+
+        public Builder paymentLatencyMillis(long paymentLatencyMillis) {
+            if (paymentLatencyMillis < 0) {
+                throw new IllegalArgumentException("paymentLatency must not be negative");
+            }
+            this.paymentLatencyMillis = paymentLatencyMillis;
+            return this;
+        }
+
+        // Extra random delay of up to this many ms on top of paymentLatency
+        public Builder paymentJitterMillis(long paymentJitterMillis) {
+            if (paymentJitterMillis < 0) {
+                throw new IllegalArgumentException("paymentJitter must not be negative");
+            }
+            this.paymentJitterMillis = paymentJitterMillis;
+            return this;
+        }
+
+        // Share of payments the stub declines
+        public Builder paymentFailureRate(double paymentFailureRate) {
+            if (paymentFailureRate < 0 || paymentFailureRate > 1) {
+                throw new IllegalArgumentException("paymentFailureRate must be between 0 and 1");
+            }
+            this.paymentFailureRate = paymentFailureRate;
+            return this;
+        }
+
+        // Share of payments the stub answers with a gateway error, which counts towards the circuit breaker
+        public Builder paymentErrorRate(double paymentErrorRate) {
+            if (paymentErrorRate < 0 || paymentErrorRate > 1) {
+                throw new IllegalArgumentException("paymentErrorRate must be between 0 and 1");
+            }
+            this.paymentErrorRate = paymentErrorRate;
+            return this;
+        }
+
+        public Builder paymentTimeoutMillis(long paymentTimeoutMillis) {
+            this.paymentTimeoutMillis = paymentTimeoutMillis;
+            return this;
+        }
+
+        public Builder paymentMaxInFlight(int paymentMaxInFlight) {
+            this.paymentMaxInFlight = paymentMaxInFlight;
+            return this;
+        }
+
+        public Builder smtpDelayMillis(long smtpDelayMillis) {
+            if (smtpDelayMillis < 0) {
+                throw new IllegalArgumentException("smtpDelay must not be negative");
+            }
+            this.smtpDelayMillis = smtpDelayMillis;
+            return this;
+        }
+
+        public Builder executorMode(ServerConfig.ExecutorMode executorMode) {
+            this.executorMode = executorMode;
+            return this;
+        }
+
+        public Builder workerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        // JSON report file
+        public Builder report(String report) {
+            this.report = report;
+            return this;
+        }
+
+        // The in-process server's console output goes here instead of mixing with the report
+        public Builder serverLog(String serverLog) {
+            this.serverLog = serverLog;
+            return this;
+        }
+
+        // The server's /api/metrics output at the end of the run
+        public Builder serverMetrics(String serverMetrics) {
+            this.serverMetrics = serverMetrics;
+            return this;
+        }
+
+        public LoadTestConfig build() {
+            return new LoadTestConfig(this);
+        }
+    }
+
+    // Reads key=value arguments: clients, warmup, duration, rate, catalog, mix, paymentLatency,
+    // paymentJitter, paymentFailureRate, paymentErrorRate, paymentTimeout, paymentMaxInFlight,
+    // smtpDelay, executor, workers, queue, report, serverLog and serverMetrics
+    public static LoadTestConfig fromArgs(String[] args) {
+        Builder builder = new Builder();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            String value = arg.substring(eq + 1).trim();
+            switch (arg.substring(0, eq).trim()) {
+                case "clients":
+                    builder.clients(Integer.parseInt(value));
+                    break;
+                case "warmup":
+                    builder.warmupSeconds(Integer.parseInt(value));
+                    break;
+                case "duration":
+                    builder.durationSeconds(Integer.parseInt(value));
+                    break;
+                case "rate":
+                    builder.rate(Integer.parseInt(value));
+                    break;
+                case "catalog":
+                    builder.catalogSize(Integer.parseInt(value));
+                    break;
+                case "mix":
+                    builder.mix(value);
+                    break;
+                case "paymentLatency":
+                    builder.paymentLatencyMillis(Long.parseLong(value));
+                    break;
+                case "paymentJitter":
+                    builder.paymentJitterMillis(Long.parseLong(value));
+                    break;
+                case "paymentFailureRate":
+                    builder.paymentFailureRate(Double.parseDouble(value));
+                    break;
+                case "paymentErrorRate":
+                    builder.paymentErrorRate(Double.parseDouble(value));
+                    break;
+                case "paymentTimeout":
+                    builder.paymentTimeoutMillis(Long.parseLong(value));
+                    break;
+                case "paymentMaxInFlight":
+                    builder.paymentMaxInFlight(Integer.parseInt(value));
+                    break;
+                case "smtpDelay":
+                    builder.smtpDelayMillis(Long.parseLong(value));
+                    break;
+                case "executor":
+                    builder.executorMode(ServerConfig.ExecutorMode.valueOf(value.toUpperCase()));
+                    break;
+                case "workers":
+                    builder.workerThreads(Integer.parseInt(value));
+                    break;
+                case "queue":
+                    builder.queueCapacity(Integer.parseInt(value));
+                    break;
+                case "report":
+                    builder.report(value);
+                    break;
+                case "serverLog":
+                    builder.serverLog(value);
+                    break;
+                case "serverMetrics":
+                    builder.serverMetrics(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg.substring(0, eq));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight but got " + entry);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight of " + pair[0] + " must not be negative");
+            }
+            if (weight > 0) {
+                weights.put(Operation.fromKey(pair[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix needs at least one operation");
+        }
+        return weights;
+    }
+
+    // Picks an operation with probability proportional to its weight
+    Operation pick(Random random) {
+        int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    ServerConfig toServerConfig() {
+        return new ServerConfig.Builder()
+            .port(0)
+            .executorMode(executorMode)
+            .workerThreads(workerThreads)
+            .queueCapacity(queueCapacity)
+            .catalogSnapshot(null)
+            .build();
+    }
+
+    // Validated here, like toServerConfig
+    PaymentPolicy toPaymentPolicy() {
+        return new PaymentPolicy.Builder()
+            .timeoutMillis(paymentTimeoutMillis)
+            .maxInFlight(paymentMaxInFlight)
+            .build();
+    }
+
+    StubPaymentGateway toStubGateway() {
+        return new StubPaymentGateway.Builder()
+            .latencyMillis(paymentLatencyMillis)
+            .jitterMillis(paymentJitterMillis)
+            .declineRate(paymentFailureRate)
+            .errorRate(paymentErrorRate)
+            .build();
+    }
+
+    public int getClients() { return clients; }
+    public int getWarmupSeconds() { return warmupSeconds; }
+    public int getDurationSeconds() { return durationSeconds; }
+    public int getRate() { return rate; }
+    public int getCatalogSize() { return catalogSize; }
+    public Map<Operation, Integer> getMix() { return mix; }
+    public long getPaymentLatencyMillis() { return paymentLatencyMillis; }
+    public long getPaymentJitterMillis() { return paymentJitterMillis; }
+    public double getPaymentFailureRate() { return paymentFailureRate; }
+    public double getPaymentErrorRate() { return paymentErrorRate; }
+    public long getPaymentTimeoutMillis() { return paymentTimeoutMillis; }
+    public int getPaymentMaxInFlight() { return paymentMaxInFlight; }
+    public long getSmtpDelayMillis() { return smtpDelayMillis; }
+    public ServerConfig.ExecutorMode getExecutorMode() { return executorMode; }
+    public int getWorkerThreads() { return workerThreads; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public String getReport() { return report; }
+    public String getServerLog() { return serverLog; }
+    public String getServerMetrics() { return serverMetrics; }
+}
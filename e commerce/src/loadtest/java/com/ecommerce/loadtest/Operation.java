@@ -0,0 +1,44 @@
+package com.ecommerce.loadtest;
+
+//The API calls a load test client makes, each reported as its own endpoint.
+//The key names the operation in the traffic mix (mix=products:30,cartAdd:20,...).
+enum Operation {
+    PRODUCTS("products", "GET /api/products"),
+    PRODUCT_QUERY("query", "GET /api/products?filter"),
+    CART_GET("cartGet", "GET /api/cart"),
+    CART_ADD("cartAdd", "POST /api/cart"),
+    CART_UPDATE("cartUpdate", "PUT /api/cart"),
+    CART_REMOVE("cartRemove", "DELETE /api/cart"),
+    DISCOUNT("discount", "POST /api/discount"),
+    CHECKOUT("checkout", "POST /api/checkout");
+
+    private final String key;
+    private final String label;
+
+    Operation(String key, String label) {
+        this.key = key;
+        this.label = label;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    // Operations that need something in the client's cart; an empty cart adds a line first
+    boolean needsCart() {
+        return this == CART_UPDATE || this == CART_REMOVE || this == CHECKOUT;
+    }
+
+    static Operation fromKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equalsIgnoreCase(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key);
+    }
+}
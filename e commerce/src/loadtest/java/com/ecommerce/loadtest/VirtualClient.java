@@ -0,0 +1,162 @@
+package com.ecommerce.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//One shopper: a cart session that keeps issuing operations from the configured mix until the run
+//ends. It remembers what it put in its cart so updates, removals and checkouts refer to real lines.
+final class VirtualClient implements Runnable {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String SESSION_HEADER = "X-Session-Id";
+
+    private final int id;
+    private final HttpClient http;
+    private final String baseUrl;
+    private final LoadTestConfig config;
+    private final Map<Operation, EndpointStats> stats;
+    private final String[] productIds;
+    private final long measureFrom;
+    private final long endAt;
+    private final long intervalNanos;
+    private final String sessionId = UUID.randomUUID().toString();
+    private final List<String> cart = new ArrayList<>();
+    private final Random random;
+    private String pendingProduct;
+    private long nextDue;
+
+    VirtualClient(int id, HttpClient http, String baseUrl, LoadTestConfig config, Map<Operation, EndpointStats> stats,
+                  String[] productIds, long startAt, long measureFrom, long endAt) {
+        this.id = id;
+        this.http = http;
+        this.baseUrl = baseUrl;
+        this.config = config;
+        this.stats = stats;
+        this.productIds = productIds;
+        this.measureFrom = measureFrom;
+        this.endAt = endAt;
+        this.random = new Random(id);
+        this.intervalNanos = config.getRate() > 0 ? TimeUnit.SECONDS.toNanos(config.getClients()) / config.getRate() : 0;
+        // Spread the clients' schedules over one interval so they don't all fire together
+        this.nextDue = startAt + (intervalNanos > 0 ? (long) (random.nextDouble() * intervalNanos) : 0);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long start;
+            if (intervalNanos > 0) {
+                start = nextDue;
+                nextDue += intervalNanos;
+                if (start >= endAt) {
+                    return;
+                }
+                long wait = start - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                start = System.nanoTime();
+                if (start >= endAt) {
+                    return;
+                }
+            }
+
+            Operation operation = config.pick(random);
+            if (operation.needsCart() && cart.isEmpty()) {
+                operation = Operation.CART_ADD;
+            }
+            boolean measured = start >= measureFrom;
+            try {
+                int status = http.send(request(operation), HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (measured) {
+                    stats.get(operation).record(status, System.nanoTime() - start);
+                }
+                if (status == 200) {
+                    updateCart(operation);
+                }
+            } catch (IOException e) {
+                if (measured) {
+                    stats.get(operation).recordFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private HttpRequest request(Operation operation) {
+        switch (operation) {
+            case PRODUCTS:
+                return get("/api/products").header("Accept-Encoding", "gzip").build();
+            case PRODUCT_QUERY:
+                return get("/api/products?inStock=true&sort=price&limit=20&maxPrice=" + (10 + random.nextInt(2000))).build();
+            case CART_GET:
+                return get("/api/cart").build();
+            case CART_ADD:
+                pendingProduct = productIds[random.nextInt(productIds.length)];
+                return json("POST", "/api/cart", "{\"productId\":\"" + pendingProduct + "\",\"quantity\":1}");
+            case CART_UPDATE:
+                pendingProduct = cart.get(random.nextInt(cart.size()));
+                return json("PUT", "/api/cart", "{\"productId\":\"" + pendingProduct + "\",\"quantity\":" + (1 + random.nextInt(3)) + "}");
+            case CART_REMOVE:
+                pendingProduct = cart.get(random.nextInt(cart.size()));
+                return session("/api/cart?productId=" + pendingProduct).DELETE().build();
+            case DISCOUNT:
+                return json("POST", "/api/discount", random.nextBoolean()
+                    ? "{\"type\":\"percentage\",\"value\":10}"
+                    : "{\"rules\":[{\"type\":\"percentage\",\"value\":5},{\"type\":\"cartFixed\",\"value\":10,\"minSubtotal\":100}]}");
+            case CHECKOUT:
+                return json("POST", "/api/checkout", "{\"email\":\"client" + id + "@loadtest.local\","
+                    + "\"paymentMethod\":\"creditcard\",\"paymentDetails\":\"4111111111111111\"}");
+            default:
+                throw new IllegalStateException("Unhandled operation " + operation);
+        }
+    }
+
+    private void updateCart(Operation operation) {
+        switch (operation) {
+            case CART_ADD:
+                if (!cart.contains(pendingProduct)) {
+                    cart.add(pendingProduct);
+                }
+                break;
+            case CART_REMOVE:
+                cart.remove(pendingProduct);
+                break;
+            case CHECKOUT:
+                cart.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private HttpRequest.Builder session(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(REQUEST_TIMEOUT)
+            .header(SESSION_HEADER, sessionId);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return session(path).GET();
+    }
+
+    private HttpRequest json(String method, String path, String body) {
+        return session(path)
+            .header("Content-Type", "application/json")
+            .method(method, HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+}
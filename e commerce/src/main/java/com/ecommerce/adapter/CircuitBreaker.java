@@ -0,0 +1,62 @@
+package com.ecommerce.adapter;
+
+import com.ecommerce.logging.Logger;
+
+//Fails fast while a provider is unhealthy. CLOSED lets every call through; after a run of
+//failures it goes OPEN and lets nothing through until the cool-down has passed; then HALF_OPEN
+//lets exactly one trial call through, whose outcome closes or reopens the circuit.
+//A closed circuit costs one volatile read per call; transitions take the lock.
+final class CircuitBreaker {
+    private static final Logger LOG = Logger.get(CircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String provider;
+    private final int failureThreshold;
+    private final long openNanos;
+    private volatile State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    CircuitBreaker(String provider, int failureThreshold, long openMillis) {
+        this.provider = provider;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    // Every call that gets true must report back through onSuccess or onFailure
+    boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        // A late answer to a call made before the circuit opened doesn't close it; only the trial does
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            LOG.info("Payment circuit closed", "provider", provider);
+        }
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            LOG.warn("Payment circuit opened", "provider", provider, "failures", consecutiveFailures);
+        }
+    }
+
+    State getState() {
+        return state;
+    }
+}
@@ -1,8 +1,14 @@
 package com.ecommerce.adapter;
 
+import com.ecommerce.logging.Logger;
+import com.ecommerce.model.Money;
+import java.util.concurrent.CompletableFuture;
+
 //Adapter for Credit Card payment system
 
 public class CreditCardAdapter implements PaymentAdapter {
+    private static final Logger LOG = Logger.get(CreditCardAdapter.class);
+    
     private CreditCardProcessor creditCardProcessor;
     
     public CreditCardAdapter() {
@@ -10,9 +16,10 @@ public class CreditCardAdapter implements PaymentAdapter {
     }
     
     @Override
-    public boolean processPayment(double amount, String paymentMethod) {
+    public CompletableFuture<PaymentResult> processPayment(long amount, String paymentMethod) {
         // Adapt Credit Card's specific interface to our common interface
-        return creditCardProcessor.chargeCard(amount, paymentMethod);
+        boolean charged = creditCardProcessor.chargeCard(Money.format(amount), paymentMethod);
+        return CompletableFuture.completedFuture(charged ? PaymentResult.APPROVED : PaymentResult.DECLINED);
     }
     
     @Override
@@ -22,10 +29,20 @@ public class CreditCardAdapter implements PaymentAdapter {
     
     // Simulated Credit Card processor with different interface
     private static class CreditCardProcessor {
-        public boolean chargeCard(double amount, String cardNumber) {
-            System.out.println("Processing Credit Card payment: $" + amount + " for card: " + cardNumber);
+        public boolean chargeCard(String amount, String cardNumber) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Processing credit card payment", "amount", amount, "card", mask(cardNumber));
+            }
             return true; // Simulated success
         }
+        
+        // Only the last four digits reach the log
+        private static String mask(String cardNumber) {
+            if (cardNumber == null || cardNumber.length() <= 4) {
+                return "****";
+            }
+            return "****" + cardNumber.substring(cardNumber.length() - 4);
+        }
     }
 }
 
@@ -0,0 +1,138 @@
+package com.ecommerce.adapter;
+
+import com.ecommerce.logging.LogLevel;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.metrics.MetricsRegistry;
+import com.ecommerce.model.Money;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+//Decorator that keeps a slow or failing provider from taking checkouts down with it:
+//- bulkhead: at most maxInFlight calls outstanding, further ones are REJECTED at once
+//- deadline: a call without an answer after timeoutMillis completes as TIMED_OUT
+//- circuit breaker: after failureThreshold timeouts or errors in a row, calls are UNAVAILABLE
+//  without reaching the provider until the cool-down has passed
+//The returned future never completes exceptionally. A bulkhead slot is held until the provider
+//really answers, so a hung provider can't collect an unbounded number of calls, but no longer than
+//the settle deadline, so it can't keep every slot forever either.
+//TIMED_OUT doesn't mean the payment failed: the provider may still charge, and its late answer
+//is handed to the caller's listener so the checkout can be settled either way. Without an answer by
+//the settle deadline the listener gets UNRECONCILED and anything the provider says later is only logged.
+public class GuardedPaymentAdapter implements PaymentAdapter {
+    private static final Logger LOG = Logger.get(GuardedPaymentAdapter.class);
+
+    private final PaymentAdapter delegate;
+    private final String provider;
+    private final long timeoutMillis;
+    private final long settleTimeoutMillis;
+    private final Semaphore inFlight;
+    private final CircuitBreaker breaker;
+
+    public GuardedPaymentAdapter(PaymentAdapter delegate, PaymentPolicy policy) {
+        this.delegate = delegate;
+        this.provider = delegate.getPaymentProvider();
+        this.timeoutMillis = policy.getTimeoutMillis();
+        this.settleTimeoutMillis = policy.getSettleTimeoutMillis();
+        this.inFlight = new Semaphore(policy.getMaxInFlight());
+        this.breaker = new CircuitBreaker(provider, policy.getFailureThreshold(), policy.getOpenMillis());
+
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.gauge("payment_in_flight", "Payment calls waiting for the provider",
+                       () -> policy.getMaxInFlight() - inFlight.availablePermits(), "provider", provider);
+        registry.gauge("payment_circuit_open", "1 while calls to the provider fail fast, 0.5 while a trial call is out",
+                       () -> breaker.getState() == CircuitBreaker.State.OPEN ? 1
+                           : breaker.getState() == CircuitBreaker.State.HALF_OPEN ? 0.5 : 0,
+                       "provider", provider);
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> processPayment(long amount, String paymentMethod) {
+        return processPayment(amount, paymentMethod, answer -> {
+            if (answer.isApproved()) {
+                // Nobody is waiting to settle it, so this charge has no order and must be refunded
+                LOG.warn("Payment approved after its deadline", "provider", provider, "amount", Money.format(amount));
+            }
+        });
+    }
+
+    // As above; if the returned future completes as TIMED_OUT, the provider's own answer is passed
+    // to lateAnswer when it arrives (FAILED if the call then throws), or UNRECONCILED at the settle
+    // deadline. Called exactly once, on the provider's thread or on a timer thread.
+    public CompletableFuture<PaymentResult> processPayment(long amount, String paymentMethod,
+                                                           Consumer<PaymentResult> lateAnswer) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.completedFuture(PaymentResult.REJECTED);
+        }
+        if (!breaker.tryAcquire()) {
+            inFlight.release();
+            return CompletableFuture.completedFuture(PaymentResult.UNAVAILABLE);
+        }
+
+        CompletableFuture<PaymentResult> call;
+        try {
+            call = delegate.processPayment(amount, paymentMethod);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<PaymentResult> result = new CompletableFuture<>();
+        // Whoever sets this first, the answer or the settle deadline, frees the slot and settles the call
+        AtomicBoolean settled = new AtomicBoolean();
+        call.whenComplete((answer, error) -> {
+            if (error != null || answer == null) {
+                LOG.warn("Payment provider failed", "provider", provider, "error", unwrap(error));
+                answer = PaymentResult.FAILED;
+            }
+            if (!settled.compareAndSet(false, true)) {
+                LOG.log(answer.isApproved() ? LogLevel.ERROR : LogLevel.WARN,
+                        "Payment provider answered after the settle deadline", null, "provider", provider,
+                        "amount", Money.format(amount), "result", answer.label());
+                return;
+            }
+            inFlight.release();
+            if (!result.complete(answer)) {
+                lateAnswer.accept(answer);
+            }
+        });
+        // Only schedules a timer when the provider hasn't answered yet
+        result.completeOnTimeout(PaymentResult.TIMED_OUT, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.thenAccept(answer -> {
+            if (answer == PaymentResult.TIMED_OUT) {
+                CompletableFuture.delayedExecutor(settleTimeoutMillis - timeoutMillis, TimeUnit.MILLISECONDS)
+                    .execute(() -> giveUp(settled, amount, lateAnswer));
+            }
+        });
+        return result.whenComplete((answer, error) -> {
+            if (answer == PaymentResult.APPROVED || answer == PaymentResult.DECLINED) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
+        });
+    }
+
+    private void giveUp(AtomicBoolean settled, long amount, Consumer<PaymentResult> lateAnswer) {
+        if (!settled.compareAndSet(false, true)) {
+            return;
+        }
+        inFlight.release();
+        LOG.warn("Payment provider never answered, giving up", "provider", provider, "amount", Money.format(amount));
+        lateAnswer.accept(PaymentResult.UNRECONCILED);
+    }
+
+    @Override
+    public String getPaymentProvider() {
+        return provider;
+    }
+
+    public PaymentAdapter getDelegate() {
+        return delegate;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
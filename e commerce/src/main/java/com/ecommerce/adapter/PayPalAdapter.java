@@ -1,7 +1,13 @@
 package com.ecommerce.adapter;
 
+import com.ecommerce.logging.Logger;
+import com.ecommerce.model.Money;
+import java.util.concurrent.CompletableFuture;
+
 //Adapter for PayPal payment system
 public class PayPalAdapter implements PaymentAdapter {
+    private static final Logger LOG = Logger.get(PayPalAdapter.class);
+    
     private PayPalService payPalService;
     
     public PayPalAdapter() {
@@ -9,9 +15,10 @@ public class PayPalAdapter implements PaymentAdapter {
     }
     
     @Override
-    public boolean processPayment(double amount, String paymentMethod) {
+    public CompletableFuture<PaymentResult> processPayment(long amount, String paymentMethod) {
         // Adapt PayPal's specific interface to our common interface
-        return payPalService.sendPayment(amount);
+        boolean sent = payPalService.sendPayment(Money.toDecimal(amount));
+        return CompletableFuture.completedFuture(sent ? PaymentResult.APPROVED : PaymentResult.DECLINED);
     }
     
     @Override
@@ -22,7 +29,7 @@ public class PayPalAdapter implements PaymentAdapter {
     // Simulated PayPal service with different interface
     private static class PayPalService {
         public boolean sendPayment(double amount) {
-            System.out.println("Processing PayPal payment: $" + amount);
+            LOG.debug("Processing PayPal payment", "amount", amount);
             return true; // Simulated success
         }
     }
@@ -1,9 +1,14 @@
 package com.ecommerce.adapter;
 
+import java.util.concurrent.CompletableFuture;
+
 //Adapter pattern: Adapts different payment systems to a common interface
+//The future completes when the provider answers, so a guard can put a deadline on it without a
+//thread per call; checkout itself waits for it. One instance serves every checkout, so
+//implementations must be thread-safe.
 
 public interface PaymentAdapter {
-    boolean processPayment(double amount, String paymentMethod);
+    // amount is in cents
+    CompletableFuture<PaymentResult> processPayment(long amount, String paymentMethod);
     String getPaymentProvider();
 }
-
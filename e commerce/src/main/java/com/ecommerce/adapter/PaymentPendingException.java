@@ -0,0 +1,21 @@
+package com.ecommerce.adapter;
+
+//Thrown by checkout when the provider didn't answer before the deadline. It may still charge, so
+//the stock stays reserved and the cart stays frozen until its late answer arrives; the order is
+//then placed or the stock released. The client must not pay again.
+public class PaymentPendingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String orderId;
+
+    public PaymentPendingException(String provider, String orderId) {
+        // Expected when a provider is slow, so no stack trace is captured
+        super(provider + " payment for order " + orderId + " is pending", null, false, false);
+        this.orderId = orderId;
+    }
+
+    // The id the order gets if the payment goes through
+    public String getOrderId() {
+        return orderId;
+    }
+}
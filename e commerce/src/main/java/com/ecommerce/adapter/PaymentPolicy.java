@@ -0,0 +1,96 @@
+package com.ecommerce.adapter;
+
+//Limits applied to every payment provider by GuardedPaymentAdapter, built like ServerConfig
+public class PaymentPolicy {
+    private final long timeoutMillis;
+    private final int maxInFlight;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long settleTimeoutMillis;
+
+    private PaymentPolicy(Builder builder) {
+        this.timeoutMillis = builder.timeoutMillis;
+        this.maxInFlight = builder.maxInFlight;
+        this.failureThreshold = builder.failureThreshold;
+        this.openMillis = builder.openMillis;
+        this.settleTimeoutMillis = builder.settleTimeoutMillis;
+    }
+
+    public static class Builder {
+        private long timeoutMillis = 3000;
+        private int maxInFlight = 64;
+        private int failureThreshold = 5;
+        private long openMillis = 10_000;
+        private long settleTimeoutMillis = 60_000;
+
+        // Deadline for one payment; gateways normally answer in 200 ms to 2 s
+        public Builder timeoutMillis(long timeoutMillis) {
+            if (timeoutMillis <= 0) {
+                throw new IllegalArgumentException("timeoutMillis must be positive");
+            }
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        // Calls one provider may have outstanding; more are rejected instead of queueing
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("maxInFlight must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        // Consecutive timeouts or errors that open the circuit
+        public Builder failureThreshold(int failureThreshold) {
+            if (failureThreshold <= 0) {
+                throw new IllegalArgumentException("failureThreshold must be positive");
+            }
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        // How long an open circuit fails fast before one trial call is let through
+        public Builder openMillis(long openMillis) {
+            if (openMillis <= 0) {
+                throw new IllegalArgumentException("openMillis must be positive");
+            }
+            this.openMillis = openMillis;
+            return this;
+        }
+
+        // How long after the call a timed-out payment may still get its late answer. Past that it is
+        // given up on, and its bulkhead slot is freed even if the provider never answers.
+        public Builder settleTimeoutMillis(long settleTimeoutMillis) {
+            if (settleTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("settleTimeoutMillis must be positive");
+            }
+            this.settleTimeoutMillis = settleTimeoutMillis;
+            return this;
+        }
+
+        public PaymentPolicy build() {
+            if (settleTimeoutMillis < timeoutMillis) {
+                throw new IllegalArgumentException("settleTimeoutMillis must not be shorter than timeoutMillis");
+            }
+            return new PaymentPolicy(this);
+        }
+    }
+
+    // Reads -Decommerce.payment.timeout, .maxInFlight, .failureThreshold, .openMillis and .settleTimeout
+    public static PaymentPolicy fromSystemProperties() {
+        Builder builder = new Builder();
+        builder.timeoutMillis(Long.getLong("ecommerce.payment.timeout", builder.timeoutMillis));
+        builder.maxInFlight(Integer.getInteger("ecommerce.payment.maxInFlight", builder.maxInFlight));
+        builder.failureThreshold(Integer.getInteger("ecommerce.payment.failureThreshold", builder.failureThreshold));
+        builder.openMillis(Long.getLong("ecommerce.payment.openMillis", builder.openMillis));
+        builder.settleTimeoutMillis(Long.getLong("ecommerce.payment.settleTimeout", builder.settleTimeoutMillis));
+        return builder.build();
+    }
+
+    public long getTimeoutMillis() { return timeoutMillis; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public int getFailureThreshold() { return failureThreshold; }
+    public long getOpenMillis() { return openMillis; }
+    public long getSettleTimeoutMillis() { return settleTimeoutMillis; }
+}
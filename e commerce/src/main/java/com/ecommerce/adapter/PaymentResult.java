@@ -0,0 +1,32 @@
+package com.ecommerce.adapter;
+
+//Outcome of one payment call. Only APPROVED and DECLINED are answers from the provider. TIMED_OUT
+//means the outcome is not known yet, and UNRECONCILED that it never became known; the rest mean the
+//payment didn't happen and the same checkout can be tried again.
+public enum PaymentResult {
+    APPROVED,
+    DECLINED,
+    TIMED_OUT,    // no answer before the deadline; the provider may still charge
+    REJECTED,     // too many calls already waiting on this provider
+    UNAVAILABLE,  // circuit breaker open, the provider wasn't called
+    FAILED,       // the provider call threw
+    UNRECONCILED; // a timed-out call still had no answer at the settle deadline; check with the provider
+
+    public boolean isApproved() {
+        return this == APPROVED;
+    }
+
+    // Nothing is known until the provider's late answer arrives
+    public boolean isPending() {
+        return this == TIMED_OUT;
+    }
+
+    public boolean isRetryable() {
+        return this == REJECTED || this == UNAVAILABLE || this == FAILED;
+    }
+
+    // Label value for metrics, e.g. timed_out
+    public String label() {
+        return name().toLowerCase();
+    }
+}
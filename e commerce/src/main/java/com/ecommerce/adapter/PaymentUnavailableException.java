@@ -0,0 +1,19 @@
+package com.ecommerce.adapter;
+
+//Thrown by checkout when the payment never reached the provider (overload or open circuit) or the
+//provider call failed. Nothing was charged and the stock was released, so the client may retry.
+public class PaymentUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final PaymentResult result;
+
+    public PaymentUnavailableException(String provider, PaymentResult result) {
+        // Expected under load and handled by the caller, so no stack trace is captured
+        super(provider + " payment " + result.label(), null, false, false);
+        this.result = result;
+    }
+
+    public PaymentResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package com.ecommerce.adapter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Local stand-in for a remote payment gateway, for load tests and development. Each payment
+//answers after latencyMillis plus up to jitterMillis, is declined with probability declineRate
+//and fails with a gateway error with probability errorRate. Waiting costs no thread: the answer
+//is scheduled on one timer thread, so thousands of payments can be outstanding at once.
+public class StubPaymentGateway implements PaymentAdapter {
+    private final String provider;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double declineRate;
+    private final double errorRate;
+    private final ScheduledExecutorService timer;
+    private final LongAdder approved = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private StubPaymentGateway(Builder builder) {
+        this.provider = builder.provider;
+        this.latencyMillis = builder.latencyMillis;
+        this.jitterMillis = builder.jitterMillis;
+        this.declineRate = builder.declineRate;
+        this.errorRate = builder.errorRate;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stub-gateway");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static class Builder {
+        private String provider = "Stub Gateway";
+        private long latencyMillis = 0;
+        private long jitterMillis = 0;
+        private double declineRate = 0;
+        private double errorRate = 0;
+
+        public Builder provider(String provider) {
+            this.provider = provider;
+            return this;
+        }
+
+        public Builder latencyMillis(long latencyMillis) {
+            if (latencyMillis < 0) {
+                throw new IllegalArgumentException("latencyMillis must not be negative");
+            }
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        public Builder jitterMillis(long jitterMillis) {
+            if (jitterMillis < 0) {
+                throw new IllegalArgumentException("jitterMillis must not be negative");
+            }
+            this.jitterMillis = jitterMillis;
+            return this;
+        }
+
+        public Builder declineRate(double declineRate) {
+            this.declineRate = checkRate(declineRate, "declineRate");
+            return this;
+        }
+
+        public Builder errorRate(double errorRate) {
+            this.errorRate = checkRate(errorRate, "errorRate");
+            return this;
+        }
+
+        private static double checkRate(double rate, String name) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException(name + " must be between 0 and 1");
+            }
+            return rate;
+        }
+
+        public StubPaymentGateway build() {
+            return new StubPaymentGateway(this);
+        }
+    }
+
+    // Reads -Decommerce.payment.stubLatency, .stubJitter, .stubDeclineRate and .stubErrorRate
+    public static StubPaymentGateway fromSystemProperties() {
+        Builder builder = new Builder();
+        builder.latencyMillis(Long.getLong("ecommerce.payment.stubLatency", 200));
+        builder.jitterMillis(Long.getLong("ecommerce.payment.stubJitter", 0));
+        builder.declineRate(Double.parseDouble(System.getProperty("ecommerce.payment.stubDeclineRate", "0")));
+        builder.errorRate(Double.parseDouble(System.getProperty("ecommerce.payment.stubErrorRate", "0")));
+        return builder.build();
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> processPayment(long amount, String paymentMethod) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double roll = random.nextDouble();
+        long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        CompletableFuture<PaymentResult> answer = new CompletableFuture<>();
+        Runnable respond = () -> {
+            if (roll < errorRate) {
+                errors.increment();
+                answer.completeExceptionally(new IllegalStateException(provider + " returned an error"));
+            } else if (roll < errorRate + declineRate) {
+                declined.increment();
+                answer.complete(PaymentResult.DECLINED);
+            } else {
+                approved.increment();
+                answer.complete(PaymentResult.APPROVED);
+            }
+        };
+        if (delay == 0) {
+            respond.run();
+        } else {
+            timer.schedule(respond, delay, TimeUnit.MILLISECONDS);
+        }
+        return answer;
+    }
+
+    @Override
+    public String getPaymentProvider() {
+        return provider;
+    }
+
+    public long getApproved() {
+        return approved.sum();
+    }
+
+    public long getDeclined() {
+        return declined.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,109 @@
+package com.ecommerce.api;
+
+import com.ecommerce.logging.Logger;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Executor for HttpServer that bounds requests in flight and marks the overflow as shed.
+//HttpServer closes the connection if execute() throws, so instead of rejecting we run
+//overflow exchanges inline on the dispatcher with a shed flag; the admission filter then
+//answers them with a cheap 503 without touching the handlers.
+public class AdmissionExecutor implements Executor {
+    private static final Logger LOG = Logger.get(AdmissionExecutor.class);
+    private static final ThreadLocal<Boolean> SHED = new ThreadLocal<>();
+
+    private final ExecutorService workers;
+    private final Semaphore permits;
+    private final AtomicLong shedCount = new AtomicLong();
+
+    public AdmissionExecutor(ServerConfig config) {
+        this.workers = createWorkers(config);
+        this.permits = new Semaphore(config.getMaxInFlight());
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        if (!permits.tryAcquire()) {
+            shedCount.incrementAndGet();
+            SHED.set(Boolean.TRUE);
+            try {
+                exchange.run();
+            } finally {
+                SHED.remove();
+            }
+            return;
+        }
+
+        try {
+            workers.execute(() -> {
+                try {
+                    exchange.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // True while the current thread is running an exchange that was not admitted
+    public static boolean isShed() {
+        return SHED.get() != null;
+    }
+
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService createWorkers(ServerConfig config) {
+        if (config.getExecutorMode() == ServerConfig.ExecutorMode.VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            LOG.info("Virtual threads not available on this JDK, using a platform thread pool");
+        }
+
+        // The semaphore already bounds the backlog, so the pool's own queue never grows past it
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(config.getWorkerThreads(), r -> {
+            Thread t = new Thread(r, "http-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Looked up reflectively so the project still compiles for Java 11
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
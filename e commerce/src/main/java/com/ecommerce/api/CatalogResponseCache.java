@@ -0,0 +1,124 @@
+package com.ecommerce.api;
+
+import com.ecommerce.facade.ECommerceFacade;
+import com.ecommerce.model.Money;
+import com.ecommerce.model.Product;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+//Serialized GET /api/products body, rebuilt only when the facade's catalog version moves
+public class CatalogResponseCache {
+    // Distinguishes ETags across restarts, since catalog versions start from zero again
+    private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+    private final ECommerceFacade facade;
+    private final boolean prettyJson;
+    private final int compressionThreshold;
+    private volatile Snapshot snapshot;
+
+    public CatalogResponseCache(ECommerceFacade facade, boolean prettyJson, int compressionThreshold) {
+        this.facade = facade;
+        this.prettyJson = prettyJson;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    // Weak ETag for a catalog version, used when the body is streamed rather than cached
+    static String versionETag(long version) {
+        return "W/\"catalog-" + EPOCH + "-" + version + "\"";
+    }
+
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null && current.version == facade.getCatalogVersion()) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            long version = facade.getCatalogVersion();
+            if (current == null || current.version != version) {
+                // Tag with the version read before serializing; a change racing with us forces another rebuild
+                byte[] body = serialize();
+                byte[] gzipped = body.length >= compressionThreshold ? gzip(body) : null;
+                current = new Snapshot(version, body, gzipped);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private byte[] serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            if (prettyJson) {
+                writer.setIndent("  ");
+            }
+            writeCatalog(writer, facade.getProductsView());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Shared by the cached body and the streaming response path
+    static void writeCatalog(JsonWriter writer, Collection<Product> products) throws IOException {
+        writer.beginObject();
+        writer.name("products").beginArray();
+        for (Product p : products) {
+            writeProduct(writer, p);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+    
+    static void writeProduct(JsonWriter writer, Product p) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(p.getId());
+        writer.name("name").value(p.getName());
+        writer.name("basePrice").value(Money.toDecimal(p.getBasePrice()));
+        writer.name("stock").value(p.getStock());
+        writer.name("configurations").beginObject();
+        for (Map.Entry<String, String> config : p.getConfigurations().entrySet()) {
+            writer.name(config.getKey()).value(config.getValue());
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private static byte[] gzip(byte[] body) {
+        try {
+            return HttpCompression.gzip(body);
+        } catch (IOException e) {
+            // In-memory compression; fall back to serving the plain body
+            return null;
+        }
+    }
+
+    public static class Snapshot {
+        private final long version;
+        private final byte[] body;
+        private final byte[] gzipped;
+        private final String etag;
+        private final String gzipETag;
+
+        Snapshot(long version, byte[] body, byte[] gzipped) {
+            this.version = version;
+            this.body = body;
+            this.gzipped = gzipped;
+            this.etag = "\"catalog-" + EPOCH + "-" + version + "\"";
+            this.gzipETag = "\"catalog-" + EPOCH + "-" + version + "-gz\"";
+        }
+
+        public long getVersion() { return version; }
+        public boolean hasGzip() { return gzipped != null; }
+
+        // Callers must not modify the returned arrays
+        public byte[] getBody(boolean gzip) { return gzip && gzipped != null ? gzipped : body; }
+        public String getETag(boolean gzip) { return gzip && gzipped != null ? gzipETag : etag; }
+    }
+}
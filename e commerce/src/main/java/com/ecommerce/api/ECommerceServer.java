@@ -1,32 +1,154 @@
 package com.ecommerce.api;
 
+import com.ecommerce.adapter.PaymentPendingException;
+import com.ecommerce.adapter.PaymentUnavailableException;
+import com.ecommerce.facade.CheckoutInProgressException;
 import com.ecommerce.facade.ECommerceFacade;
 import com.ecommerce.factory.ProductFactory;
+import com.ecommerce.logging.LogLevel;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.metrics.Counter;
+import com.ecommerce.metrics.MetricsRegistry;
+import com.ecommerce.model.Money;
 import com.ecommerce.model.Product;
+import com.ecommerce.model.ProductUpdate;
+import com.ecommerce.search.ProductPage;
+import com.ecommerce.search.ProductQuery;
 import com.ecommerce.strategy.*;
 import com.ecommerce.cart.CartItem;
+import com.ecommerce.cart.ShoppingCart;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.*;
+import java.lang.reflect.Type;
+import java.math.RoundingMode;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 //  REST API Server using Facade pattern
 public class ECommerceServer {
+    private static final Logger LOG = Logger.get(ECommerceServer.class);
+    static final String SESSION_COOKIE = "CART_SESSION";
+    static final String SESSION_HEADER = "X-Session-Id";
+    static final int BULK_BATCH_SIZE = 1000;
+    static final int MAX_REPORTED_ERRORS = 100;
+    static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    // Longer than a checkout can take: payment deadline plus the wait for the order journal
+    static final long IDEMPOTENCY_WAIT_MILLIS = 15_000;
+    static final String CHECKOUT_IN_PROGRESS = "This checkout is still in progress, please retry.";
+    private static final Type JSON_OBJECT = new TypeToken<Map<String, Object>>() { }.getType();
+    
+    static {
+        // The JDK server leaves Nagle's algorithm on, so a response written as headers then body
+        // waits ~40 ms for the client's delayed ACK. Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
     private ECommerceFacade facade;
     private Gson gson;
     private HttpServer server;
+    private ServerConfig config;
+    private AdmissionExecutor executor;
+    private CatalogResponseCache catalogCache;
+    private StaticAssetCache staticAssets;
+    private EventStreamHub eventStream;
+    private MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private IdempotencyCache<CheckoutResponse> idempotency;
+    // executed, coalesced, replayed, conflict, busy
+    private Counter[] idempotencyOutcomes = new Counter[5];
     
     public ECommerceServer() {
-        this.facade = new ECommerceFacade();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        initializeProducts();
+        this(new ServerConfig.Builder().build());
+    }
+    
+    public ECommerceServer(ServerConfig config) {
+        this(config, new ECommerceFacade());
+    }
+    
+    // Serves an existing facade, e.g. one wired to a stub payment gateway and a local SMTP sink
+    public ECommerceServer(ServerConfig config, ECommerceFacade facade) {
+        this.config = config;
+        this.facade = facade;
+        GsonBuilder gsonBuilder = new GsonBuilder();
+        if (config.isPrettyJson()) {
+            gsonBuilder.setPrettyPrinting();
+        }
+        this.gson = gsonBuilder.create();
+        this.catalogCache = new CatalogResponseCache(facade, config.isPrettyJson(), config.getCompressionThreshold());
+        this.staticAssets = new StaticAssetCache(getClass().getClassLoader());
+        this.eventStream = new EventStreamHub();
+        facade.getCartStore().setListener(eventStream);
+        facade.addProductObserver(eventStream);
+        loadCatalog();
+        metrics.gauge("catalog_products", "Products in the catalog", () -> facade.getProductsView().size());
+        metrics.gauge("orders_stored", "Orders placed, including ones replayed from the journal", facade::getOrderCount);
+        metrics.gauge("payments_pending", "Checkouts waiting for a late answer from the payment provider",
+                      facade::getPendingPaymentCount);
+        metrics.gauge("payments_unreconciled", "Orders whose payment never got an answer and must be checked with the provider",
+                      () -> facade.getUnreconciledOrders().size());
+        this.idempotency = new IdempotencyCache<>(config.getIdempotencyCacheSize(),
+                                                  TimeUnit.SECONDS.toMillis(config.getIdempotencyTtlSeconds()));
+        metrics.gauge("checkout_idempotency_entries", "Checkouts remembered by Idempotency-Key", idempotency::size);
+        String[] outcomes = {"executed", "coalesced", "replayed", "conflict", "busy"};
+        for (int i = 0; i < outcomes.length; i++) {
+            idempotencyOutcomes[i] = metrics.counter("checkout_idempotency_total",
+                "Checkouts with an Idempotency-Key: run, joined while running, answered from cache, refused, or turned away as busy",
+                "outcome", outcomes[i]);
+        }
+    }
+    
+    // Starts from the last catalog snapshot when there is one, otherwise from the sample products
+    private void loadCatalog() {
+        if (config.getCatalogSnapshot() == null) {
+            initializeProducts();
+            return;
+        }
+        Path snapshot = Paths.get(config.getCatalogSnapshot());
+        boolean loaded = false;
+        if (Files.exists(snapshot)) {
+            try {
+                long start = System.nanoTime();
+                int count = facade.loadCatalogSnapshot(snapshot);
+                LOG.info("Loaded catalog snapshot", "products", count, "path", snapshot,
+                         "ms", (System.nanoTime() - start) / 1_000_000);
+                loaded = true;
+            } catch (IOException e) {
+                LOG.warn("Ignoring unreadable catalog snapshot", "path", snapshot, "error", e.getMessage());
+            }
+        }
+        if (!loaded) {
+            initializeProducts();
+        }
+        facade.startCatalogSnapshots(snapshot, config.getSnapshotIntervalSeconds() * 1000L);
     }
     
     private void initializeProducts() {
@@ -34,150 +156,416 @@ public class ECommerceServer {
         Map<String, String> config1 = new HashMap<>();
         config1.put("color", "Black");
         config1.put("memory", "256GB");
-        Product p1 = ProductFactory.createProduct("electronics", "P001", "Smartphone", 599.99, 50, config1);
+        Product p1 = ProductFactory.createProduct("electronics", "P001", "Smartphone", 59999, 50, config1);
         facade.addProduct(p1);
         
         Map<String, String> config2 = new HashMap<>();
         config2.put("color", "Blue");
         config2.put("size", "L");
-        Product p2 = ProductFactory.createProduct("clothing", "P002", "T-Shirt", 29.99, 100, config2);
+        Product p2 = ProductFactory.createProduct("clothing", "P002", "T-Shirt", 2999, 100, config2);
         facade.addProduct(p2);
         
-        Product p3 = ProductFactory.createProduct("book", "P003", "Java Design Patterns", 49.99, 30, null);
+        Product p3 = ProductFactory.createProduct("book", "P003", "Java Design Patterns", 4999, 30, null);
         facade.addProduct(p3);
         
-        Product p4 = ProductFactory.createProduct("electronics", "P004", "Laptop", 1299.99, 25, null);
+        Product p4 = ProductFactory.createProduct("electronics", "P004", "Laptop", 129999, 25, null);
         facade.addProduct(p4);
     }
     
-    public void start(int port) throws IOException {
-        server = HttpServer.create(new InetSocketAddress(port), 0);
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(config.getPort()), config.getBacklog());
+        staticAssets.preload("/index.html", "/app.js", "/style.css");
         
-        // CORS headers helper
-        server.createContext("/api/products", exchange -> {
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                setCorsHeaders(exchange);
-                exchange.sendResponseHeaders(200, -1);
-                return;
-            }
-            setCorsHeaders(exchange);
-            handleProducts(exchange);
-        });
+        createApiContext("/api/products", this::handleProducts);
+        createApiContext("/api/products/suggest", this::handleSuggest);
+        createApiContext("/api/cart", this::handleCart);
+        createApiContext("/api/discount", this::handleDiscount);
+        createApiContext("/api/update", this::handleUpdate);
+        createApiContext("/api/update/bulk", this::handleBulkUpdate);
+        createApiContext("/api/checkout", this::handleCheckout);
+        createApiContext("/api/events", this::handleEvents, false);
+        createApiContext("/api/metrics", this::handleMetrics);
         
-        server.createContext("/api/cart", exchange -> {
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                setCorsHeaders(exchange);
-                exchange.sendResponseHeaders(200, -1);
-                return;
-            }
+        // Serve static files
+        HttpContext staticFiles = server.createContext("/", exchange -> {
             setCorsHeaders(exchange);
-            handleCart(exchange);
+            serveStaticFile(exchange);
         });
+        staticFiles.getFilters().add(new HttpMetricsFilter(metrics, "/", true));
+        staticFiles.getFilters().add(admissionFilter);
         
-        server.createContext("/api/discount", exchange -> {
+        if (config.getExecutorMode() == ServerConfig.ExecutorMode.DISPATCHER) {
+            server.setExecutor(null);
+        } else {
+            executor = new AdmissionExecutor(config);
+            server.setExecutor(executor);
+            AdmissionExecutor admission = executor;
+            metrics.gauge("http_requests_in_flight", "Admitted requests running or queued",
+                          () -> config.getMaxInFlight() - admission.getAvailablePermits());
+            metrics.counter("http_requests_shed_total", "Requests answered with 503 because the server was full",
+                            admission::getShedCount);
+        }
+        server.start();
+        LOG.log(LogLevel.INFO, "Server started", null, "port", getPort(), "executor", config.getExecutorMode(),
+                "workers", config.getWorkerThreads(), "queue", config.getQueueCapacity());
+    }
+    
+    // Registers an API endpoint with CORS preflight handling, metrics and admission control
+    private void createApiContext(String path, HttpHandler handler) {
+        createApiContext(path, handler, true);
+    }
+    
+    private void createApiContext(String path, HttpHandler handler, boolean timed) {
+        HttpContext context = server.createContext(path, exchange -> {
             if ("OPTIONS".equals(exchange.getRequestMethod())) {
                 setCorsHeaders(exchange);
                 exchange.sendResponseHeaders(200, -1);
                 return;
             }
             setCorsHeaders(exchange);
-            handleDiscount(exchange);
-        });
-        
-        server.createContext("/api/update", exchange -> {
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                setCorsHeaders(exchange);
-                exchange.sendResponseHeaders(200, -1);
-                return;
+            try {
+                handler.handle(exchange);
+            } catch (CheckoutInProgressException e) {
+                // Thrown before anything was written, by cart changes while the session is paying
+                sendJson(exchange, 409, gson.toJson(Map.of("error", CHECKOUT_IN_PROGRESS)));
             }
-            setCorsHeaders(exchange);
-            handleUpdate(exchange);
         });
-        
-        server.createContext("/api/checkout", exchange -> {
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                setCorsHeaders(exchange);
-                exchange.sendResponseHeaders(200, -1);
+        // Outermost, so shed requests are counted too
+        context.getFilters().add(new HttpMetricsFilter(metrics, path, timed));
+        context.getFilters().add(admissionFilter);
+    }
+    
+    // Answers exchanges that AdmissionExecutor could not admit with 503 before any handler runs
+    private final Filter admissionFilter = new Filter() {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (AdmissionExecutor.isShed()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendResponse(exchange, 503, "Server busy, please retry");
                 return;
             }
-            setCorsHeaders(exchange);
-            handleCheckout(exchange);
-        });
-        
-        // Serve static files
-        server.createContext("/", exchange -> {
-            setCorsHeaders(exchange);
-            serveStaticFile(exchange);
-        });
+            chain.doFilter(exchange);
+        }
         
-        server.setExecutor(null);
-        server.start();
-        System.out.println("Server started on port " + port);
-    }
+        @Override
+        public String description() {
+            return "Sheds requests beyond the configured in-flight limit";
+        }
+    };
     
     private void setCorsHeaders(HttpExchange exchange) {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers",
+                                          "Content-Type, If-None-Match, " + SESSION_HEADER + ", " + IDEMPOTENCY_HEADER);
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", SESSION_HEADER + ", ETag, Idempotent-Replayed");
+    }
+    
+    // Resolves the cart session from the X-Session-Id header or the CART_SESSION cookie, issuing a new one if absent
+    private String resolveSession(HttpExchange exchange) {
+        String sessionId = findSession(exchange);
+        if (sessionId != null) {
+            return sessionId;
+        }
+        
+        sessionId = UUID.randomUUID().toString();
+        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + sessionId + "; Path=/; HttpOnly; SameSite=Lax");
+        exchange.getResponseHeaders().set(SESSION_HEADER, sessionId);
+        return sessionId;
+    }
+    
+    // The client's existing session, or null; for read paths, which must not start one
+    private String findSession(HttpExchange exchange) {
+        String sessionId = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        if (isValidSessionId(sessionId)) {
+            return sessionId;
+        }
+        
+        for (String cookieHeader : exchange.getRequestHeaders().getOrDefault("Cookie", List.of())) {
+            for (String cookie : cookieHeader.split(";")) {
+                String[] pair = cookie.trim().split("=", 2);
+                if (pair.length == 2 && SESSION_COOKIE.equals(pair[0]) && isValidSessionId(pair[1])) {
+                    return pair[1];
+                }
+            }
+        }
+        return null;
+    }
+    
+    private boolean isValidSessionId(String sessionId) {
+        return sessionId != null && !sessionId.isEmpty() && sessionId.length() <= 64
+            && sessionId.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '-' || c == '_');
     }
     
     private void handleProducts(HttpExchange exchange) throws IOException {
         if ("GET".equals(exchange.getRequestMethod())) {
-            Map<String, Product> products = facade.getProducts();
-            Map<String, Object> response = new HashMap<>();
-            response.put("products", products.values().stream().map(p -> {
-                Map<String, Object> prod = new HashMap<>();
-                prod.put("id", p.getId());
-                prod.put("name", p.getName());
-                prod.put("basePrice", p.getBasePrice());
-                prod.put("stock", p.getStock());
-                prod.put("configurations", p.getConfigurations());
-                return prod;
-            }).collect(Collectors.toList()));
+            Map<String, String> params;
+            try {
+                params = parseQuery(exchange);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, 400, gson.toJson(Map.of("error", "Malformed query string")));
+                return;
+            }
+            if (!params.isEmpty()) {
+                queryProducts(exchange, params);
+                return;
+            }
+            if (config.isStreamingResponses()) {
+                streamCatalog(exchange);
+                return;
+            }
+            
+            CatalogResponseCache.Snapshot catalog = catalogCache.get();
+            boolean gzip = catalog.hasGzip() && HttpCompression.acceptsGzip(exchange);
+            String etag = catalog.getETag(gzip);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
             
-            sendResponse(exchange, 200, gson.toJson(response));
+            if (matchesETag(exchange, etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            sendResponse(exchange, 200, catalog.getBody(gzip));
         } else {
             sendResponse(exchange, 405, "Method not allowed");
         }
     }
     
+    // Filtered page: ?category=Electronics&color=Black,Blue&minPrice=10&maxPrice=100&inStock=true
+    // &sort=price|-price|name&limit=20&cursor=... Any parameter that isn't a reserved one is a
+    // configuration attribute; comma-separated values match any of them.
+    private void queryProducts(HttpExchange exchange, Map<String, String> params) throws IOException {
+        ProductQuery query;
+        try {
+            ProductQuery.Builder builder = new ProductQuery.Builder();
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                String value = param.getValue();
+                switch (param.getKey()) {
+                    // Bounds in dollars, rounded inwards to whole cents
+                    case "minPrice":
+                        builder.minPrice(Money.parse(value, RoundingMode.CEILING));
+                        break;
+                    case "maxPrice":
+                        builder.maxPrice(Money.parse(value, RoundingMode.FLOOR));
+                        break;
+                    case "inStock":
+                        builder.inStockOnly(Boolean.parseBoolean(value));
+                        break;
+                    case "sort":
+                        builder.sort(parseSort(value));
+                        break;
+                    case "limit":
+                        builder.limit(Integer.parseInt(value));
+                        break;
+                    case "cursor":
+                        builder.cursor(value);
+                        break;
+                    default:
+                        builder.attribute(param.getKey(), value.split(","));
+                }
+            }
+            query = builder.build();
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+            return;
+        }
+        
+        ProductPage page;
+        try {
+            page = facade.queryProducts(query);
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+            return;
+        }
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        sendJson(exchange, 200, writer -> {
+            writer.beginObject();
+            writer.name("products").beginArray();
+            for (Product product : page.getProducts()) {
+                CatalogResponseCache.writeProduct(writer, product);
+            }
+            writer.endArray();
+            writer.name("nextCursor").value(page.getNextCursor());
+            writer.endObject();
+        });
+    }
+    
+    private static ProductQuery.Sort parseSort(String sort) {
+        switch (sort) {
+            case "price":
+                return ProductQuery.Sort.PRICE_ASC;
+            case "-price":
+                return ProductQuery.Sort.PRICE_DESC;
+            case "name":
+                return ProductQuery.Sort.NAME;
+            case "catalog":
+                return ProductQuery.Sort.CATALOG;
+            default:
+                throw new IllegalArgumentException("Unknown sort " + sort);
+        }
+    }
+    
+    // Typeahead: ?q=lapt&limit=5&fuzzy=true
+    private void handleSuggest(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Method not allowed");
+            return;
+        }
+        Map<String, String> params;
+        int limit;
+        try {
+            params = parseQuery(exchange);
+            limit = Integer.parseInt(params.getOrDefault("limit", "5"));
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, gson.toJson(Map.of("error", "Malformed query string")));
+            return;
+        }
+        if (limit <= 0) {
+            sendJson(exchange, 400, gson.toJson(Map.of("error", "limit must be positive")));
+            return;
+        }
+        List<Product> suggestions = facade.suggestProducts(params.getOrDefault("q", ""), limit,
+            Boolean.parseBoolean(params.get("fuzzy")));
+        sendJson(exchange, 200, writer -> {
+            writer.beginObject();
+            writer.name("suggestions").beginArray();
+            for (Product product : suggestions) {
+                writer.beginObject();
+                writer.name("id").value(product.getId());
+                writer.name("name").value(product.getName());
+                writer.name("basePrice").value(Money.toDecimal(product.getBasePrice()));
+                writer.name("stock").value(product.getStock());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        });
+    }
+    
+    // Decoded query parameters; a repeated name keeps its last value
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        String raw = exchange.getRequestURI().getRawQuery();
+        Map<String, String> params = new LinkedHashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            String name = URLDecoder.decode(parts[0], StandardCharsets.UTF_8);
+            String value = parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "";
+            params.put(name, value);
+        }
+        return params;
+    }
+    
+    // Streams the live catalog instead of caching it; the version is read first so a concurrent
+    // change yields a newer ETag on the next request rather than a stale 304
+    private void streamCatalog(HttpExchange exchange) throws IOException {
+        String etag = CatalogResponseCache.versionETag(facade.getCatalogVersion());
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        
+        if (matchesETag(exchange, etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        sendJson(exchange, 200, writer -> CatalogResponseCache.writeCatalog(writer, facade.getProductsView()));
+    }
+    
+    // Weak comparison per RFC 9110: a W/ prefix on the client's tag is ignored
+    private boolean matchesETag(HttpExchange exchange, String etag) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        if (etag.startsWith("W/")) {
+            etag = etag.substring(2);
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Prometheus text format
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Method not allowed");
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+        try (Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8)) {
+            metrics.writeTo(writer);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        sendResponse(exchange, 200, buffer.toByteArray());
+    }
+    
+    private void handleEvents(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Method not allowed");
+            return;
+        }
+        String sessionId = resolveSession(exchange);
+        eventStream.subscribe(exchange, sessionId);
+        // Sent under the cart lock so it can't overtake a change that is already queued
+        facade.readCart(sessionId, cart -> {
+            eventStream.onCartChanged(sessionId, cart, null);
+            return null;
+        });
+    }
+    
     private void handleCart(HttpExchange exchange) throws IOException {
         String method = exchange.getRequestMethod();
         
         if ("GET".equals(method)) {
-            Map<String, Object> response = new HashMap<>();
-            response.put("items", facade.getCart().getItems().stream().map(item -> {
-                Map<String, Object> cartItem = new HashMap<>();
-                cartItem.put("productId", item.getProduct().getId());
-                cartItem.put("productName", item.getProduct().getName());
-                cartItem.put("quantity", item.getQuantity());
-                cartItem.put("price", item.getCurrentPrice());
-                cartItem.put("subtotal", item.getSubtotal());
-                return cartItem;
-            }).collect(Collectors.toList()));
-            response.put("subtotal", facade.getCart().getItems().stream()
-                .mapToDouble(CartItem::getSubtotal).sum());
-            response.put("discount", facade.getCart().calculateDiscount());
-            response.put("total", facade.getCart().calculateTotal());
-            
-            sendResponse(exchange, 200, gson.toJson(response));
-        } else if ("POST".equals(method)) {
+            // Copy the lines and totals under the cart lock, then write without holding it; a
+            // client without a session just sees an empty cart
+            String existing = findSession(exchange);
+            CartView view = existing != null ? facade.readCart(existing, CartView::new) : new CartView(new ShoppingCart());
+            sendJson(exchange, 200, view::write);
+            return;
+        }
+        
+        String sessionId = resolveSession(exchange);
+        if ("POST".equals(method)) {
             String body = getRequestBody(exchange);
             Map<String, Object> request = gson.fromJson(body, Map.class);
             String productId = (String) request.get("productId");
             int quantity = ((Double) request.get("quantity")).intValue();
             
-            facade.addToCart(productId, quantity);
-            sendResponse(exchange, 200, gson.toJson(Map.of("success", true)));
+            if (facade.addToCart(sessionId, productId, quantity)) {
+                sendJson(exchange, 200, gson.toJson(Map.of("success", true)));
+            } else {
+                sendJson(exchange, 409, gson.toJson(Map.of("error", "Not enough stock")));
+            }
         } else if ("DELETE".equals(method)) {
             String query = exchange.getRequestURI().getQuery();
             String productId = query != null ? query.split("=")[1] : null;
             
             if (productId != null) {
-                facade.removeFromCart(productId);
-                sendResponse(exchange, 200, gson.toJson(Map.of("success", true)));
+                facade.removeFromCart(sessionId, productId);
+                sendJson(exchange, 200, gson.toJson(Map.of("success", true)));
             } else {
-                sendResponse(exchange, 400, gson.toJson(Map.of("error", "Product ID required")));
+                sendJson(exchange, 400, gson.toJson(Map.of("error", "Product ID required")));
             }
         } else if ("PUT".equals(method)) {
             String body = getRequestBody(exchange);
@@ -185,8 +573,11 @@ public class ECommerceServer {
             String productId = (String) request.get("productId");
             int quantity = ((Double) request.get("quantity")).intValue();
             
-            facade.getCart().updateQuantity(productId, quantity);
-            sendResponse(exchange, 200, gson.toJson(Map.of("success", true)));
+            if (facade.updateCartQuantity(sessionId, productId, quantity)) {
+                sendJson(exchange, 200, gson.toJson(Map.of("success", true)));
+            } else {
+                sendJson(exchange, 409, gson.toJson(Map.of("error", "Not enough stock")));
+            }
         } else {
             sendResponse(exchange, 405, "Method not allowed");
         }
@@ -199,33 +590,111 @@ public class ECommerceServer {
             String type = (String) request.get("type");
             
             DiscountStrategy strategy = null;
-            switch (type) {
-                case "percentage":
-                    double percentage = ((Double) request.get("value"));
-                    strategy = new PercentageDiscountStrategy(percentage);
-                    break;
-                case "fixed":
-                    double fixed = ((Double) request.get("value"));
-                    strategy = new FixedAmountDiscountStrategy(fixed);
-                    break;
-                case "bulk":
-                    int threshold = ((Double) request.get("threshold")).intValue();
-                    double discount = ((Double) request.get("value"));
-                    strategy = new BulkDiscountStrategy(threshold, discount);
-                    break;
+            if (request.get("rules") instanceof List) {
+                try {
+                    strategy = parsePromotions((List<?>) request.get("rules"));
+                } catch (IllegalArgumentException e) {
+                    sendJson(exchange, 400, gson.toJson(Map.of("error", "Invalid rule: " + e.getMessage())));
+                    return;
+                }
+            } else if (type != null) {
+                try {
+                    switch (type) {
+                        case "percentage":
+                            double percentage = ((Double) request.get("value"));
+                            strategy = new PercentageDiscountStrategy(percentage);
+                            break;
+                        case "fixed":
+                            double fixed = ((Double) request.get("value"));
+                            strategy = new FixedAmountDiscountStrategy(parseAmount(fixed));
+                            break;
+                        case "bulk":
+                            int threshold = ((Double) request.get("threshold")).intValue();
+                            double discount = ((Double) request.get("value"));
+                            strategy = new BulkDiscountStrategy(threshold, discount);
+                            break;
+                    }
+                } catch (IllegalArgumentException e) {
+                    sendJson(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+                    return;
+                }
             }
             
             if (strategy != null) {
-                facade.applyDiscount(strategy);
-                sendResponse(exchange, 200, gson.toJson(Map.of("success", true, "description", strategy.getDescription())));
+                facade.applyDiscount(resolveSession(exchange), strategy);
+                sendJson(exchange, 200, gson.toJson(Map.of("success", true, "description", strategy.getDescription())));
             } else {
-                sendResponse(exchange, 400, gson.toJson(Map.of("error", "Invalid discount type")));
+                sendJson(exchange, 400, gson.toJson(Map.of("error", "Invalid discount type")));
             }
         } else {
             sendResponse(exchange, 405, "Method not allowed");
         }
     }
     
+    // Stacked promotions: [{"type":"percentage","value":10,"category":"Books","priority":1}, ...]
+    // Types are percentage, fixed, bulk (with threshold), cartPercentage and cartFixed (with minSubtotal)
+    private static PromotionPlan parsePromotions(List<?> rules) {
+        List<PromotionRule> parsed = new ArrayList<>();
+        for (Object item : rules) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException("each rule must be an object");
+            }
+            Map<?, ?> rule = (Map<?, ?>) item;
+            Double value = ruleNumber(rule, "value");
+            if (value == null) {
+                throw new IllegalArgumentException("value is required");
+            }
+            PromotionRule.Type type = parseRuleType(rule.get("type"));
+            long amount = type.isPercentage() ? Money.basisPoints(value) : parseAmount(value);
+            Object category = rule.get("category");
+            PromotionRule.Builder builder = new PromotionRule.Builder(type, amount)
+                .category(category instanceof String ? (String) category : null)
+                .exclusive(Boolean.TRUE.equals(rule.get("exclusive")));
+            Double threshold = ruleNumber(rule, "threshold");
+            if (threshold != null) {
+                builder.threshold(threshold.intValue());
+            }
+            Double minSubtotal = ruleNumber(rule, "minSubtotal");
+            if (minSubtotal != null) {
+                builder.minSubtotal(parseAmount(minSubtotal));
+            }
+            Double priority = ruleNumber(rule, "priority");
+            if (priority != null) {
+                builder.priority(priority.intValue());
+            }
+            parsed.add(builder.build());
+        }
+        return PromotionPlan.compile(parsed);
+    }
+    
+    private static Double ruleNumber(Map<?, ?> rule, String field) {
+        Object value = rule.get(field);
+        if (value != null && !(value instanceof Double)) {
+            throw new IllegalArgumentException(field + " must be a number");
+        }
+        return (Double) value;
+    }
+    
+    private static PromotionRule.Type parseRuleType(Object type) {
+        if (!(type instanceof String)) {
+            throw new IllegalArgumentException("type is required");
+        }
+        switch ((String) type) {
+            case "percentage":
+                return PromotionRule.Type.PERCENTAGE;
+            case "fixed":
+                return PromotionRule.Type.FIXED;
+            case "bulk":
+                return PromotionRule.Type.BULK;
+            case "cartPercentage":
+                return PromotionRule.Type.CART_PERCENTAGE;
+            case "cartFixed":
+                return PromotionRule.Type.CART_FIXED;
+            default:
+                throw new IllegalArgumentException("unknown type " + type);
+        }
+    }
+    
     private void handleUpdate(HttpExchange exchange) throws IOException {
         if ("POST".equals(exchange.getRequestMethod())) {
             String body = getRequestBody(exchange);
@@ -234,53 +703,336 @@ public class ECommerceServer {
             String updateType = (String) request.get("type");
             
             if ("price".equals(updateType)) {
-                double newPrice = ((Double) request.get("value"));
+                long newPrice;
+                try {
+                    newPrice = parseAmount((Double) request.get("value"));
+                } catch (IllegalArgumentException e) {
+                    sendJson(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+                    return;
+                }
                 facade.updateProductPrice(productId, newPrice);
             } else if ("stock".equals(updateType)) {
                 int newStock = ((Double) request.get("value")).intValue();
+                if (newStock < 0) {
+                    sendJson(exchange, 400, gson.toJson(Map.of("error", "Stock must not be negative")));
+                    return;
+                }
                 facade.updateProductStock(productId, newStock);
             }
             
-            sendResponse(exchange, 200, gson.toJson(Map.of("success", true)));
+            sendJson(exchange, 200, gson.toJson(Map.of("success", true)));
         } else {
             sendResponse(exchange, 405, "Method not allowed");
         }
     }
     
-    private void handleCheckout(HttpExchange exchange) throws IOException {
-        if ("POST".equals(exchange.getRequestMethod())) {
-            String body = getRequestBody(exchange);
-            Map<String, Object> request = gson.fromJson(body, Map.class);
-            String customerEmail = (String) request.get("email");
-            String paymentMethod = (String) request.get("paymentMethod");
-            String paymentDetails = (String) request.get("paymentDetails");
-            
-            if (customerEmail == null || customerEmail.trim().isEmpty()) {
-                sendResponse(exchange, 400, gson.toJson(Map.of("error", "Email is required")));
-                return;
-            }
-            
-            if (paymentMethod == null) {
-                paymentMethod = "creditcard";
+    // Newline-delimited JSON, one update per line: {"productId":"P001","price":10.5,"stock":20}
+    // or the /api/update shape {"productId":"P001","type":"price","value":10.5}. Lines are read
+    // as they arrive and applied BULK_BATCH_SIZE at a time, one observer notification per batch.
+    private void handleBulkUpdate(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Method not allowed");
+            return;
+        }
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        
+        int lines = 0;
+        int applied = 0;
+        int failed = 0;
+        int batches = 0;
+        List<Map<String, Object>> errors = new ArrayList<>();
+        List<ProductUpdate> batch = new ArrayList<>(BULK_BATCH_SIZE);
+        List<Integer> batchLines = new ArrayList<>(BULK_BATCH_SIZE);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(parseUpdate(line));
+                    batchLines.add(lines);
+                } catch (JsonParseException e) {
+                    failed++;
+                    reportError(errors, lines, "Malformed JSON");
+                } catch (ClassCastException e) {
+                    failed++;
+                    reportError(errors, lines, "Field has the wrong type");
+                } catch (IllegalArgumentException e) {
+                    failed++;
+                    reportError(errors, lines, e.getMessage());
+                }
+                if (batch.size() == BULK_BATCH_SIZE) {
+                    int rejected = applyBatch(batch, batchLines, errors);
+                    applied += batch.size() - rejected;
+                    failed += rejected;
+                    batches++;
+                    batch.clear();
+                    batchLines.clear();
+                }
             }
-            
-            if (paymentDetails == null) {
-                paymentDetails = "payment_details";
+        }
+        if (!batch.isEmpty()) {
+            int rejected = applyBatch(batch, batchLines, errors);
+            applied += batch.size() - rejected;
+            failed += rejected;
+            batches++;
+        }
+        
+        errors.sort(Comparator.comparingInt(error -> (Integer) error.get("line")));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("applied", applied);
+        result.put("failed", failed);
+        result.put("batches", batches);
+        result.put("errors", errors);
+        result.put("errorsTruncated", failed > errors.size());
+        sendJson(exchange, 200, gson.toJson(result));
+    }
+    
+    private int applyBatch(List<ProductUpdate> batch, List<Integer> batchLines, List<Map<String, Object>> errors) {
+        Map<Integer, String> rejected = facade.applyProductUpdates(batch);
+        for (Map.Entry<Integer, String> error : rejected.entrySet()) {
+            reportError(errors, batchLines.get(error.getKey()), error.getValue());
+        }
+        return rejected.size();
+    }
+    
+    private static void reportError(List<Map<String, Object>> errors, int line, String message) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(Map.of("line", line, "error", message));
+        }
+    }
+    
+    private ProductUpdate parseUpdate(String line) {
+        Map<String, Object> request = gson.fromJson(line, JSON_OBJECT);
+        if (request == null) {
+            throw new IllegalArgumentException("Empty update");
+        }
+        Object productId = request.get("productId");
+        if (!(productId instanceof String)) {
+            throw new IllegalArgumentException("productId is required");
+        }
+        Double price = (Double) request.get("price");
+        Double stock = (Double) request.get("stock");
+        Object type = request.get("type");
+        if (type != null) {
+            Double value = (Double) request.get("value");
+            if (value == null) {
+                throw new IllegalArgumentException("value is required");
             }
-            
-            com.ecommerce.model.Order order = facade.checkout(customerEmail, paymentMethod, paymentDetails);
-            
-            if (order != null) {
-                Map<String, Object> response = new HashMap<>();
-                response.put("success", true);
-                response.put("orderId", order.getOrderId());
-                response.put("message", "Order confirmed! Check your email for confirmation.");
-                sendResponse(exchange, 200, gson.toJson(response));
+            if ("price".equals(type)) {
+                price = value;
+            } else if ("stock".equals(type)) {
+                stock = value;
             } else {
-                sendResponse(exchange, 400, gson.toJson(Map.of("error", "Checkout failed. Cart may be empty or payment failed.")));
+                throw new IllegalArgumentException("Unknown update type " + type);
             }
-        } else {
+        }
+        if (price == null && stock == null) {
+            throw new IllegalArgumentException("Nothing to update");
+        }
+        return new ProductUpdate((String) productId, price != null ? parseAmount(price) : null,
+            stock != null ? stock.intValue() : null);
+    }
+    
+    // Amounts arrive as decimal dollars; anything finer than a cent is rejected rather than rounded
+    private static long parseAmount(double amount) {
+        return Money.fromDecimal(amount, RoundingMode.UNNECESSARY);
+    }
+    
+    // With an Idempotency-Key header, repeats of a checkout from the same session get the first
+    // request's answer: while it is still running they wait for it, afterwards it is replayed
+    private void handleCheckout(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
             sendResponse(exchange, 405, "Method not allowed");
+            return;
+        }
+        String body = getRequestBody(exchange);
+        String sessionId = resolveSession(exchange);
+        // A request that can't be run is refused before it claims a key, so fixing it and
+        // retrying with the same key still works
+        CheckoutRequest request;
+        try {
+            request = parseCheckout(body);
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+            return;
+        }
+        String key = exchange.getRequestHeaders().getFirst(IDEMPOTENCY_HEADER);
+        if (key == null || key.isBlank()) {
+            sendCheckout(exchange, checkout(sessionId, request), false);
+            return;
+        }
+        if (key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            sendJson(exchange, 400, gson.toJson(Map.of("error", IDEMPOTENCY_HEADER + " is too long")));
+            return;
+        }
+        
+        IdempotencyCache<CheckoutResponse>.Claim claim = idempotency.claim(sessionId + " " + key.trim(), body);
+        if (claim == null) {
+            idempotencyOutcomes[4].increment();
+            sendCheckout(exchange, CheckoutResponse.BUSY, false);
+            return;
+        }
+        if (claim.isConflict()) {
+            idempotencyOutcomes[3].increment();
+            sendJson(exchange, 422, gson.toJson(Map.of("error", IDEMPOTENCY_HEADER + " was already used for a different checkout")));
+            return;
+        }
+        if (!claim.isOwner()) {
+            idempotencyOutcomes[claim.isReplay() ? 2 : 1].increment();
+            CheckoutResponse response;
+            try {
+                response = claim.result().get(IDEMPOTENCY_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                sendJson(exchange, 409, gson.toJson(Map.of("error", CHECKOUT_IN_PROGRESS)));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the original checkout", e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            sendCheckout(exchange, response, true);
+            return;
+        }
+        
+        idempotencyOutcomes[0].increment();
+        CheckoutResponse response = CheckoutResponse.UNKNOWN;
+        try {
+            response = checkout(sessionId, request);
+        } catch (RuntimeException e) {
+            LOG.log(LogLevel.ERROR, "Checkout failed", e, "session", sessionId);
+        } finally {
+            // The key keeps every answer except those known to have charged nothing, so a retry can
+            // never pay twice; after those the next retry runs the checkout again
+            if (response.retryable) {
+                claim.abandon(response);
+            } else {
+                claim.complete(response);
+            }
+        }
+        sendCheckout(exchange, response, false);
+    }
+    
+    private CheckoutRequest parseCheckout(String body) {
+        Map<String, Object> request;
+        try {
+            request = gson.fromJson(body, JSON_OBJECT);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed JSON");
+        }
+        if (request == null) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        String customerEmail = stringField(request, "email");
+        String paymentMethod = stringField(request, "paymentMethod");
+        String paymentDetails = stringField(request, "paymentDetails");
+        
+        if (customerEmail == null || customerEmail.trim().isEmpty()) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        
+        if (paymentMethod == null) {
+            paymentMethod = "creditcard";
+        }
+        
+        if (paymentDetails == null) {
+            paymentDetails = "payment_details";
+        }
+        return new CheckoutRequest(customerEmail, paymentMethod, paymentDetails);
+    }
+    
+    private static String stringField(Map<String, Object> request, String name) {
+        Object value = request.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException(name + " must be a string");
+        }
+        return (String) value;
+    }
+    
+    private CheckoutResponse checkout(String sessionId, CheckoutRequest request) {
+        com.ecommerce.model.Order order;
+        try {
+            order = facade.checkout(sessionId, request.email, request.paymentMethod, request.paymentDetails);
+        } catch (CheckoutInProgressException e) {
+            return CheckoutResponse.retryable(409, gson.toJson(Map.of("error", CHECKOUT_IN_PROGRESS)));
+        } catch (PaymentPendingException e) {
+            // The provider may still charge, so this is kept as the key's answer and the cart stays
+            // frozen; the order is confirmed by email if the payment goes through
+            Map<String, Object> response = new HashMap<>();
+            response.put("pending", true);
+            response.put("orderId", e.getOrderId());
+            response.put("message", "Payment is still being confirmed. You will get an email once the order is confirmed; please do not pay again.");
+            return new CheckoutResponse(202, gson.toJson(response));
+        } catch (PaymentUnavailableException e) {
+            // The provider wasn't reached or refused the call, and the cart is untouched, so the same
+            // request can simply be retried
+            return CheckoutResponse.retryable(503, gson.toJson(Map.of("error", "Payment provider unavailable, please retry.",
+                                                                 "reason", e.getResult().label())));
+        }
+        
+        if (order != null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("orderId", order.getOrderId());
+            response.put("message", "Order confirmed! Check your email for confirmation.");
+            return new CheckoutResponse(200, gson.toJson(response));
+        }
+        return new CheckoutResponse(400, gson.toJson(Map.of("error", "Checkout failed. Cart may be empty, out of stock or payment failed.")));
+    }
+    
+    private void sendCheckout(HttpExchange exchange, CheckoutResponse response, boolean replayed) throws IOException {
+        if (response.status == 503) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        }
+        if (replayed) {
+            exchange.getResponseHeaders().set("Idempotent-Replayed", "true");
+        }
+        sendJson(exchange, response.status, response.body);
+    }
+    
+    private static class CheckoutRequest {
+        private final String email;
+        private final String paymentMethod;
+        private final String paymentDetails;
+        
+        CheckoutRequest(String email, String paymentMethod, String paymentDetails) {
+            this.email = email;
+            this.paymentMethod = paymentMethod;
+            this.paymentDetails = paymentDetails;
+        }
+    }
+    
+    // A finished checkout answer, kept by the idempotency cache unless it is retryable
+    private static class CheckoutResponse {
+        static final CheckoutResponse BUSY = retryable(503,
+            "{\"error\":\"Too many checkouts in progress, please retry.\"}");
+        // The checkout broke off somewhere, possibly after the payment went through
+        static final CheckoutResponse UNKNOWN = new CheckoutResponse(500,
+            "{\"error\":\"Checkout failed and the payment may have gone through. Please check your email before paying again.\"}", false);
+        
+        private final int status;
+        private final byte[] body;
+        // Known to have charged nothing, so the same request may run again
+        private final boolean retryable;
+        
+        CheckoutResponse(int status, String json) {
+            this(status, json, false);
+        }
+        
+        private CheckoutResponse(int status, String json, boolean retryable) {
+            this.status = status;
+            this.body = json.getBytes(StandardCharsets.UTF_8);
+            this.retryable = retryable;
+        }
+        
+        static CheckoutResponse retryable(int status, String json) {
+            return new CheckoutResponse(status, json, true);
         }
     }
     
@@ -290,39 +1042,30 @@ public class ECommerceServer {
             path = "/index.html";
         }
         
-        // Remove leading slash for resource path
-        String resourcePath = "web" + path;
-        
         try {
-            InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath);
-            if (is == null) {
+            StaticAssetCache.Asset asset = staticAssets.get(path);
+            if (asset == null) {
                 sendResponse(exchange, 404, "File not found: " + path);
                 return;
             }
             
-            String contentType = "text/html";
-            if (path.endsWith(".css")) contentType = "text/css";
-            else if (path.endsWith(".js")) contentType = "application/javascript";
-            else if (path.endsWith(".json")) contentType = "application/json";
-            else if (path.endsWith(".png")) contentType = "image/png";
-            else if (path.endsWith(".jpg") || path.endsWith(".jpeg")) contentType = "image/jpeg";
-            
-            exchange.getResponseHeaders().set("Content-Type", contentType);
+            boolean gzip = asset.hasGzip() && HttpCompression.acceptsGzip(exchange);
+            String etag = asset.getETag(gzip);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", asset.getCacheControl());
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
             
-            // Read all bytes first to get content length
-            byte[] buffer = new byte[8192];
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
-            }
-            is.close();
-            byte[] content = baos.toByteArray();
+            if (matchesETag(exchange, etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
             
-            exchange.sendResponseHeaders(200, content.length);
-            OutputStream os = exchange.getResponseBody();
-            os.write(content);
-            os.close();
+            exchange.getResponseHeaders().set("Content-Type", asset.getContentType());
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            sendResponse(exchange, 200, asset.getBody(gzip));
         } catch (Exception e) {
             sendResponse(exchange, 500, "Error serving file: " + e.getMessage());
         }
@@ -335,22 +1078,134 @@ public class ECommerceServer {
             .collect(Collectors.joining("\n"));
     }
     
+    // JSON bodies above the configured threshold are gzipped when the client accepts it
+    private void sendJson(HttpExchange exchange, int statusCode, String json) throws IOException {
+        sendJson(exchange, statusCode, json.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void sendJson(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (body.length >= config.getCompressionThreshold()) {
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (HttpCompression.acceptsGzip(exchange)) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                body = HttpCompression.gzip(body);
+            }
+        }
+        sendResponse(exchange, statusCode, body);
+    }
+    
+    // Bodies are streamed with chunked encoding in streaming mode, otherwise buffered and sent as above
+    private void sendJson(HttpExchange exchange, int statusCode, JsonBodyWriter body) throws IOException {
+        if (!config.isStreamingResponses()) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (JsonWriter writer = newJsonWriter(buffer)) {
+                body.write(writer);
+            }
+            sendJson(exchange, statusCode, buffer.toByteArray());
+            return;
+        }
+        
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        boolean gzip = HttpCompression.acceptsGzip(exchange);
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(statusCode, 0);
+        OutputStream os = exchange.getResponseBody();
+        if (gzip) {
+            os = new GZIPOutputStream(os, 8192);
+        }
+        try (JsonWriter writer = newJsonWriter(new BufferedOutputStream(os, 8192))) {
+            body.write(writer);
+        }
+    }
+    
+    private JsonWriter newJsonWriter(OutputStream out) {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (config.isPrettyJson()) {
+            writer.setIndent("  ");
+        }
+        return writer;
+    }
+    
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.sendResponseHeaders(statusCode, response.getBytes(StandardCharsets.UTF_8).length);
+        sendResponse(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void sendResponse(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(statusCode, body.length);
         OutputStream os = exchange.getResponseBody();
-        os.write(response.getBytes(StandardCharsets.UTF_8));
+        os.write(body);
         os.close();
     }
     
+    // Point-in-time copy of a cart taken under its stripe lock. The lines are copied too, so they
+    // agree with the totals when written after the lock is released.
+    static class CartView {
+        private final List<CartItem> items;
+        private final long subtotal;
+        private final long discount;
+        private final long total;
+        
+        CartView(ShoppingCart cart) {
+            this.items = new ArrayList<>(cart.getLineCount());
+            for (CartItem item : cart.getItemsView()) {
+                items.add(item.copy());
+            }
+            this.subtotal = cart.getSubtotal();
+            this.discount = cart.calculateDiscount();
+            this.total = cart.calculateTotal();
+        }
+        
+        void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("items").beginArray();
+            for (CartItem item : items) {
+                writer.beginObject();
+                writer.name("productId").value(item.getProduct().getId());
+                writer.name("productName").value(item.getProduct().getName());
+                writer.name("quantity").value(item.getQuantity());
+                writer.name("price").value(Money.toDecimal(item.getCurrentPrice()));
+                writer.name("subtotal").value(Money.toDecimal(item.getSubtotal()));
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("subtotal").value(Money.toDecimal(subtotal));
+            writer.name("discount").value(Money.toDecimal(discount));
+            writer.name("total").value(Money.toDecimal(total));
+            writer.endObject();
+        }
+    }
+    
+    // The bound port, which differs from the configured one when that was 0
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : config.getPort();
+    }
+    
+    public ECommerceFacade getFacade() {
+        return facade;
+    }
+    
     public void stop() {
+        eventStream.shutdown();
         if (server != null) {
             server.stop(0);
         }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        facade.shutdown();
+        // The log writer is a daemon thread; give it a moment so the last records reach the console
+        Logger.flush(1000);
     }
     
     public static void main(String[] args) throws IOException {
-        ECommerceServer server = new ECommerceServer();
-        server.start(8080);
+        ECommerceServer server = new ECommerceServer(ServerConfig.fromSystemProperties());
+        // Flush the order journal, email outbox and catalog snapshot on Ctrl+C / SIGTERM
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "shutdown"));
+        server.start();
     }
 }
 
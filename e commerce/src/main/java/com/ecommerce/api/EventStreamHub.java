@@ -0,0 +1,340 @@
+package com.ecommerce.api;
+
+import com.ecommerce.cart.CartItem;
+import com.ecommerce.cart.CartListener;
+import com.ecommerce.cart.ShoppingCart;
+import com.ecommerce.model.Money;
+import com.ecommerce.model.Product;
+import com.ecommerce.observer.ProductChange;
+import com.ecommerce.observer.ProductObserver;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Server-Sent Events hub. Browsers subscribe on /api/events and receive product price/stock
+//changes plus deltas for their own cart. Each client has a small bounded buffer; a few writer
+//threads send buffered events, so open streams don't tie up request workers. Writes block, so a
+//watchdog drops any client whose write has been stuck past the timeout and frees its writer.
+//A client that falls too far behind is disconnected and resyncs when EventSource reconnects.
+public class EventStreamHub implements ProductObserver, CartListener {
+    private static final int CLIENT_BUFFER = 64;
+    private static final int WRITER_THREADS = 4;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final long WRITE_TIMEOUT_MILLIS = 10_000;
+
+    // Event data must stay on one line, so never pretty-print here
+    private final Gson gson = new Gson();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<Client>> clientsBySession = new ConcurrentHashMap<>();
+    // Holds each client at most once (see schedule), so it never grows past the client count
+    private final BlockingQueue<Client> ready = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public EventStreamHub() {
+        for (int i = 0; i < WRITER_THREADS; i++) {
+            start(this::writeLoop, "sse-writer-" + (i + 1));
+        }
+        start(this::watchLoop, "sse-watchdog");
+    }
+
+    private void start(Runnable loop, String name) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    // Takes ownership of the exchange; the handler returns while the stream stays open.
+    // The caller then pushes the current cart through onCartChanged under the cart lock.
+    public void subscribe(HttpExchange exchange, String sessionId) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+        exchange.sendResponseHeaders(200, 0);
+
+        Client client = new Client(exchange, sessionId);
+        client.offer("retry: 3000\n\n");
+        clients.add(client);
+        clientsBySession.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet()).add(client);
+        schedule(client);
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public void onPriceChanged(Product product, long oldPrice, long newPrice) {
+        broadcast(productEvent(product));
+    }
+
+    @Override
+    public void onStockChanged(Product product, int oldStock, int newStock) {
+        broadcast(productEvent(product));
+    }
+
+    // A bulk update may touch the whole catalog; tell clients to reload rather than list every product
+    @Override
+    public void onProductsChanged(Collection<ProductChange> changes) {
+        broadcast(event("catalog", Map.of("changed", changes.size())));
+    }
+
+    @Override
+    public void onCartChanged(String sessionId, ShoppingCart cart, String productId) {
+        Set<Client> sessionClients = clientsBySession.get(sessionId);
+        if (sessionClients == null || sessionClients.isEmpty()) {
+            return;
+        }
+        String message = event("cart", productId == null ? fullCart(cart) : cartDelta(cart, productId));
+        for (Client client : sessionClients) {
+            enqueue(client, message);
+        }
+    }
+
+    private void broadcast(String message) {
+        for (Client client : clients) {
+            enqueue(client, message);
+        }
+    }
+
+    private void enqueue(Client client, String message) {
+        if (!client.offer(message)) {
+            // Too far behind; dropping it is cheaper than buffering without bound
+            client.overflowed = true;
+        }
+        schedule(client);
+    }
+
+    // A client already waiting for a writer will be drained by it, so queue it only once
+    private void schedule(Client client) {
+        if (!client.closed && client.scheduled.compareAndSet(false, true)) {
+            ready.offer(client);
+        }
+    }
+
+    private String productEvent(Product product) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", product.getId());
+        data.put("basePrice", Money.toDecimal(product.getBasePrice()));
+        data.put("stock", product.getStock());
+        return event("product", data);
+    }
+
+    private Map<String, Object> cartDelta(ShoppingCart cart, String productId) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("type", "line");
+        data.put("productId", productId);
+        CartItem item = null;
+        for (CartItem candidate : cart.getItemsView()) {
+            if (candidate.getProduct().getId().equals(productId)) {
+                item = candidate;
+                break;
+            }
+        }
+        data.put("line", item != null ? line(item) : null);
+        totals(cart, data);
+        return data;
+    }
+
+    private Map<String, Object> fullCart(ShoppingCart cart) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("type", "full");
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (CartItem item : cart.getItemsView()) {
+            items.add(line(item));
+        }
+        data.put("items", items);
+        totals(cart, data);
+        return data;
+    }
+
+    private static Map<String, Object> line(CartItem item) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("productId", item.getProduct().getId());
+        line.put("productName", item.getProduct().getName());
+        line.put("quantity", item.getQuantity());
+        line.put("price", Money.toDecimal(item.getCurrentPrice()));
+        line.put("subtotal", Money.toDecimal(item.getSubtotal()));
+        return line;
+    }
+
+    private static void totals(ShoppingCart cart, Map<String, Object> data) {
+        data.put("subtotal", Money.toDecimal(cart.getSubtotal()));
+        data.put("discount", Money.toDecimal(cart.calculateDiscount()));
+        data.put("total", Money.toDecimal(cart.calculateTotal()));
+    }
+
+    private String event(String name, Object data) {
+        return "event: " + name + "\ndata: " + gson.toJson(data) + "\n\n";
+    }
+
+    private void writeLoop() {
+        while (running) {
+            Client client;
+            try {
+                client = ready.take();
+            } catch (InterruptedException e) {
+                // The watchdog may have interrupted a stuck write just as it finished
+                if (running) {
+                    continue;
+                }
+                return;
+            }
+            // Cleared before draining, so anything buffered from here on schedules the client again
+            client.scheduled.set(false);
+            flush(client);
+        }
+    }
+
+    // Sends heartbeats and drops clients whose socket has stopped accepting data. Interrupting
+    // the writer aborts its blocked write on the socket channel and closes the connection.
+    private void watchLoop() {
+        long nextHeartbeat = System.currentTimeMillis() + HEARTBEAT_MILLIS;
+        while (running) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Client client : clients) {
+                synchronized (client) {
+                    if (client.writer != null && now - client.writeStartedAt > WRITE_TIMEOUT_MILLIS) {
+                        // The writer closes the exchange once its write fails
+                        detach(client);
+                        client.writer.interrupt();
+                    }
+                }
+            }
+            if (now >= nextHeartbeat) {
+                for (Client client : clients) {
+                    enqueue(client, ": ping\n\n");
+                }
+                nextHeartbeat = now + HEARTBEAT_MILLIS;
+            }
+        }
+    }
+
+    // At most one writer per client at a time; one that finds the lock taken skips the client,
+    // and the holder schedules it again if more arrived after its last poll
+    private void flush(Client client) {
+        if (!client.writeLock.tryLock()) {
+            return;
+        }
+        try {
+            write(client);
+        } finally {
+            client.writeLock.unlock();
+        }
+        if (!client.buffer.isEmpty()) {
+            schedule(client);
+        }
+    }
+
+    private void write(Client client) {
+        if (client.closed) {
+            return;
+        }
+        if (client.overflowed) {
+            close(client);
+            return;
+        }
+        String message;
+        boolean wrote = false;
+        try {
+            while ((message = client.buffer.poll()) != null) {
+                startWrite(client);
+                client.out.write(message.getBytes(StandardCharsets.UTF_8));
+                wrote = true;
+            }
+            if (wrote) {
+                startWrite(client);
+                client.out.flush();
+            }
+        } catch (IOException e) {
+            close(client);
+        } finally {
+            synchronized (client) {
+                client.writer = null;
+            }
+            // Clear an interrupt from the watchdog that landed after the write had already returned
+            Thread.interrupted();
+        }
+    }
+
+    private void startWrite(Client client) {
+        synchronized (client) {
+            client.writer = Thread.currentThread();
+            client.writeStartedAt = System.currentTimeMillis();
+        }
+    }
+
+    private void close(Client client) {
+        detach(client);
+        client.exchange.close();
+    }
+
+    // Stops sending to the client; closing its exchange is left to whoever is not stuck on it
+    private void detach(Client client) {
+        client.closed = true;
+        clients.remove(client);
+        Set<Client> sessionClients = clientsBySession.get(client.sessionId);
+        if (sessionClients != null) {
+            sessionClients.remove(client);
+            if (sessionClients.isEmpty()) {
+                clientsBySession.remove(client.sessionId, sessionClients);
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Client client : clients) {
+            close(client);
+        }
+    }
+
+    private static class Client {
+        private final HttpExchange exchange;
+        private final OutputStream out;
+        private final String sessionId;
+        private final BlockingQueue<String> buffer = new ArrayBlockingQueue<>(CLIENT_BUFFER);
+        private final ReentrantLock writeLock = new ReentrantLock();
+        // True while the client sits in the ready queue
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean overflowed;
+        private volatile boolean closed;
+        // Set while a write is in progress, guarded by the client's monitor
+        private Thread writer;
+        private long writeStartedAt;
+
+        Client(HttpExchange exchange, String sessionId) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+            this.sessionId = sessionId;
+        }
+
+        boolean offer(String message) {
+            return buffer.offer(message);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ecommerce.api;
+
+import com.ecommerce.metrics.Counter;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.metrics.MetricsRegistry;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+
+//Counts the responses of one context by status class and times them, from the moment a worker
+//picks the exchange up until the handler returns. The series are resolved when the context is
+//registered, so a request costs two clock reads and a few uncontended adds.
+class HttpMetricsFilter extends Filter {
+    private final LatencyHistogram latency;
+    private final Counter[] responses = new Counter[4];
+
+    // Long-lived responses such as event streams are counted but not timed
+    HttpMetricsFilter(MetricsRegistry registry, String path, boolean timed) {
+        this.latency = timed
+            ? registry.histogram("http_request_duration_seconds", "Time to handle an API request", "path", path)
+            : null;
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = registry.counter("http_requests_total", "API responses by status class",
+                                            "path", path, "status", (i + 2) + "xx");
+        }
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            if (latency != null) {
+                latency.recordSince(start);
+            }
+            // -1 means the handler failed before sending anything and HttpServer drops the
+            // connection, which the client sees as a server error
+            int status = exchange.getResponseCode();
+            int statusClass = status >= 200 && status < 600 ? status / 100 - 2 : 3;
+            responses[statusClass].increment();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Records API response counts and latencies";
+    }
+}
@@ -0,0 +1,178 @@
+package com.ecommerce.api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Outcomes of requests that carried an Idempotency-Key, so a retried request gets the first answer
+//back instead of running again. A key is claimed before the work starts; a duplicate arriving in
+//the meantime gets the same future and waits for that single execution.
+//Split into lock stripes like CartStore. Each stripe keeps insertion order, so expired entries sit
+//at the head and are swept when a key is claimed, and a full stripe drops its oldest finished entry.
+//Entries still in flight are never dropped, since a retry of one would run the request twice.
+public class IdempotencyCache<V> {
+    private static final int STRIPES = 16;
+
+    private final List<Stripe<V>> stripes = new ArrayList<>(STRIPES);
+    private final int maxPerStripe;
+    private final long ttlMillis;
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("maxEntries and ttlMillis must be positive");
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new Stripe<>());
+        }
+        this.maxPerStripe = Math.max(1, maxEntries / STRIPES);
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Claims the key for this request. The owner must finish the claim with complete() or abandon();
+    // everyone else waits on result(). The fingerprint (e.g. the request body) must match the first
+    // request's, otherwise the claim is a conflict. Returns null, claiming nothing, when the key is
+    // new and its stripe is full of requests still running; the caller should ask for a retry.
+    public Claim claim(String key, String fingerprint) {
+        Stripe<V> stripe = stripeFor(key);
+        long now = System.currentTimeMillis();
+        stripe.lock.lock();
+        try {
+            sweep(stripe, now);
+            Entry<V> entry = stripe.entries.get(key);
+            if (entry != null && !entry.isExpired(now)) {
+                boolean conflict = !entry.fingerprint.equals(fingerprint);
+                return new Claim(key, entry, false, conflict);
+            }
+            if (entry == null && stripe.entries.size() >= maxPerStripe && !evictOldestDone(stripe)) {
+                return null;
+            }
+            entry = new Entry<>(fingerprint, now + ttlMillis);
+            stripe.entries.remove(key);
+            stripe.entries.put(key, entry);
+            return new Claim(key, entry, true, false);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int total = 0;
+        for (Stripe<V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    // In-flight entries are never expired, so the sweep stops at the first one as well
+    private void sweep(Stripe<V> stripe, long now) {
+        Iterator<Entry<V>> it = stripe.entries.values().iterator();
+        while (it.hasNext()) {
+            if (!it.next().isExpired(now)) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    private boolean evictOldestDone(Stripe<V> stripe) {
+        Iterator<Entry<V>> it = stripe.entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().result.isDone()) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(String key, Entry<V> entry) {
+        Stripe<V> stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.entries.remove(key, entry);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe<V> stripeFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes.get(h & (STRIPES - 1));
+    }
+
+    public class Claim {
+        private final String key;
+        private final Entry<V> entry;
+        private final boolean owner;
+        private final boolean conflict;
+        private final boolean done;
+
+        private Claim(String key, Entry<V> entry, boolean owner, boolean conflict) {
+            this.key = key;
+            this.entry = entry;
+            this.owner = owner;
+            this.conflict = conflict;
+            this.done = entry.result.isDone();
+        }
+
+        public boolean isOwner() {
+            return owner;
+        }
+
+        // The key was first used with a different request
+        public boolean isConflict() {
+            return conflict;
+        }
+
+        // The first request had already finished when this one arrived
+        public boolean isReplay() {
+            return !owner && done;
+        }
+
+        public CompletableFuture<V> result() {
+            return entry.result;
+        }
+
+        // Keeps the outcome for the rest of the TTL and hands it to everyone waiting
+        public void complete(V value) {
+            entry.result.complete(value);
+        }
+
+        // Hands the outcome to everyone already waiting but forgets the key, so the next retry runs
+        // again; for failures that may go away
+        public void abandon(V value) {
+            remove(key, entry);
+            entry.result.complete(value);
+        }
+    }
+
+    private static class Stripe<V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Entry<V>> entries = new LinkedHashMap<>();
+    }
+
+    private static class Entry<V> {
+        private final String fingerprint;
+        private final long expiresAt;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Entry(String fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt && result.isDone();
+        }
+    }
+}
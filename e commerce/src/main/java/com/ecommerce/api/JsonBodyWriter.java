@@ -0,0 +1,10 @@
+package com.ecommerce.api;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+//Writes a response body token by token, so no intermediate Map tree or String is built
+@FunctionalInterface
+interface JsonBodyWriter {
+    void write(JsonWriter writer) throws IOException;
+}
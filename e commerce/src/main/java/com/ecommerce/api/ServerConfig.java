@@ -0,0 +1,182 @@
+package com.ecommerce.api;
+
+//Server tuning options, built with the same Builder style as Product
+public class ServerConfig {
+    public enum ExecutorMode {
+        DISPATCHER,  // handlers run on the HttpServer dispatcher thread (old behaviour)
+        PLATFORM,    // fixed pool of platform threads
+        VIRTUAL      // one virtual thread per request, falls back to PLATFORM before JDK 21
+    }
+
+    private final int port;
+    private final int backlog;
+    private final ExecutorMode executorMode;
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final boolean prettyJson;
+    private final int compressionThreshold;
+    private final boolean streamingResponses;
+    private final String catalogSnapshot;
+    private final int snapshotIntervalSeconds;
+    private final int idempotencyCacheSize;
+    private final int idempotencyTtlSeconds;
+
+    private ServerConfig(Builder builder) {
+        this.port = builder.port;
+        this.backlog = builder.backlog;
+        this.executorMode = builder.executorMode;
+        this.workerThreads = builder.workerThreads;
+        this.queueCapacity = builder.queueCapacity;
+        this.prettyJson = builder.prettyJson;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.streamingResponses = builder.streamingResponses;
+        this.catalogSnapshot = builder.catalogSnapshot;
+        this.snapshotIntervalSeconds = builder.snapshotIntervalSeconds;
+        this.idempotencyCacheSize = builder.idempotencyCacheSize;
+        this.idempotencyTtlSeconds = builder.idempotencyTtlSeconds;
+    }
+
+    public static class Builder {
+        private int port = 8080;
+        private int backlog = 128;
+        private ExecutorMode executorMode = ExecutorMode.PLATFORM;
+        private int workerThreads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+        private int queueCapacity = 256;
+        private boolean prettyJson = false;
+        private int compressionThreshold = 1024;
+        private boolean streamingResponses = false;
+        private String catalogSnapshot = "data/catalog.snapshot";
+        private int snapshotIntervalSeconds = 60;
+        private int idempotencyCacheSize = 10_000;
+        private int idempotencyTtlSeconds = 3600;
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public Builder executorMode(ExecutorMode mode) {
+            this.executorMode = mode;
+            return this;
+        }
+
+        public Builder workerThreads(int workerThreads) {
+            if (workerThreads <= 0) {
+                throw new IllegalArgumentException("workerThreads must be positive");
+            }
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 0) {
+                throw new IllegalArgumentException("queueCapacity must not be negative");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        // Indented JSON is easier to read while developing but costs bytes in production
+        public Builder prettyJson(boolean prettyJson) {
+            this.prettyJson = prettyJson;
+            return this;
+        }
+
+        // JSON responses at least this many bytes are gzipped for clients that accept it
+        public Builder compressionThreshold(int compressionThreshold) {
+            if (compressionThreshold < 0) {
+                throw new IllegalArgumentException("compressionThreshold must not be negative");
+            }
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        // Write catalog and cart JSON straight to the socket with chunked encoding instead of
+        // buffering, keeping response memory flat for very large catalogs
+        public Builder streamingResponses(boolean streamingResponses) {
+            this.streamingResponses = streamingResponses;
+            return this;
+        }
+
+        // Catalog is loaded from this file at startup when it exists and rewritten periodically;
+        // null or empty disables snapshots
+        public Builder catalogSnapshot(String catalogSnapshot) {
+            this.catalogSnapshot = catalogSnapshot == null || catalogSnapshot.isBlank() ? null : catalogSnapshot;
+            return this;
+        }
+
+        public Builder snapshotIntervalSeconds(int snapshotIntervalSeconds) {
+            if (snapshotIntervalSeconds <= 0) {
+                throw new IllegalArgumentException("snapshotIntervalSeconds must be positive");
+            }
+            this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+            return this;
+        }
+
+        // Checkout outcomes remembered per Idempotency-Key; the oldest go first when full
+        public Builder idempotencyCacheSize(int idempotencyCacheSize) {
+            if (idempotencyCacheSize <= 0) {
+                throw new IllegalArgumentException("idempotencyCacheSize must be positive");
+            }
+            this.idempotencyCacheSize = idempotencyCacheSize;
+            return this;
+        }
+
+        // How long a retry with the same Idempotency-Key still gets the first answer
+        public Builder idempotencyTtlSeconds(int idempotencyTtlSeconds) {
+            if (idempotencyTtlSeconds <= 0) {
+                throw new IllegalArgumentException("idempotencyTtlSeconds must be positive");
+            }
+            this.idempotencyTtlSeconds = idempotencyTtlSeconds;
+            return this;
+        }
+
+        public ServerConfig build() {
+            return new ServerConfig(this);
+        }
+    }
+
+    // Reads -Decommerce.port, .backlog, .executor (dispatcher|platform|virtual), .workers, .queue,
+    // .prettyJson, .gzipThreshold, .streaming, .catalogSnapshot, .snapshotInterval, .idempotencySize
+    // and .idempotencyTtl
+    public static ServerConfig fromSystemProperties() {
+        Builder builder = new Builder();
+        builder.port(Integer.getInteger("ecommerce.port", builder.port));
+        builder.backlog(Integer.getInteger("ecommerce.backlog", builder.backlog));
+        builder.workerThreads(Integer.getInteger("ecommerce.workers", builder.workerThreads));
+        builder.queueCapacity(Integer.getInteger("ecommerce.queue", builder.queueCapacity));
+        builder.prettyJson(Boolean.getBoolean("ecommerce.prettyJson"));
+        builder.compressionThreshold(Integer.getInteger("ecommerce.gzipThreshold", builder.compressionThreshold));
+        builder.streamingResponses(Boolean.getBoolean("ecommerce.streaming"));
+        builder.catalogSnapshot(System.getProperty("ecommerce.catalogSnapshot", builder.catalogSnapshot));
+        builder.snapshotIntervalSeconds(Integer.getInteger("ecommerce.snapshotInterval", builder.snapshotIntervalSeconds));
+        builder.idempotencyCacheSize(Integer.getInteger("ecommerce.idempotencySize", builder.idempotencyCacheSize));
+        builder.idempotencyTtlSeconds(Integer.getInteger("ecommerce.idempotencyTtl", builder.idempotencyTtlSeconds));
+        String mode = System.getProperty("ecommerce.executor");
+        if (mode != null && !mode.isBlank()) {
+            builder.executorMode(ExecutorMode.valueOf(mode.trim().toUpperCase()));
+        }
+        return builder.build();
+    }
+
+    public int getPort() { return port; }
+    public int getBacklog() { return backlog; }
+    public ExecutorMode getExecutorMode() { return executorMode; }
+    public int getWorkerThreads() { return workerThreads; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public boolean isPrettyJson() { return prettyJson; }
+    public int getCompressionThreshold() { return compressionThreshold; }
+    public boolean isStreamingResponses() { return streamingResponses; }
+    public String getCatalogSnapshot() { return catalogSnapshot; }
+    public int getSnapshotIntervalSeconds() { return snapshotIntervalSeconds; }
+    public int getIdempotencyCacheSize() { return idempotencyCacheSize; }
+    public int getIdempotencyTtlSeconds() { return idempotencyTtlSeconds; }
+
+    // Requests allowed in flight (running + waiting) before new ones are shed with 503
+    public int getMaxInFlight() { return workerThreads + queueCapacity; }
+}
@@ -0,0 +1,117 @@
+package com.ecommerce.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+//Immutable in-memory copies of the web/ resources, loaded once with a gzip variant and ETag
+public class StaticAssetCache {
+    private static final String RESOURCE_ROOT = "web";
+    // Below this size gzip framing eats most of the gain
+    private static final int MIN_GZIP_SIZE = 256;
+
+    private final ClassLoader classLoader;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public StaticAssetCache(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public void preload(String... paths) throws IOException {
+        for (String path : paths) {
+            Asset asset = load(path);
+            if (asset != null) {
+                assets.put(path, asset);
+            }
+        }
+    }
+
+    // Returns null for unknown paths; misses are not cached so random URLs can't grow the map
+    public Asset get(String path) throws IOException {
+        Asset asset = assets.get(path);
+        if (asset != null) {
+            return asset;
+        }
+        asset = load(path);
+        if (asset != null) {
+            Asset existing = assets.putIfAbsent(path, asset);
+            return existing != null ? existing : asset;
+        }
+        return null;
+    }
+
+    private Asset load(String path) throws IOException {
+        if (!path.startsWith("/") || path.contains("..") || path.contains("\\")) {
+            return null;
+        }
+        try (InputStream is = classLoader.getResourceAsStream(RESOURCE_ROOT + path)) {
+            if (is == null) {
+                return null;
+            }
+            byte[] buffer = new byte[8192];
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, bytesRead);
+            }
+            return new Asset(path, baos.toByteArray());
+        }
+    }
+
+    static String contentType(String path) {
+        if (path.endsWith(".css")) return "text/css; charset=utf-8";
+        if (path.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (path.endsWith(".json")) return "application/json; charset=utf-8";
+        if (path.endsWith(".png")) return "image/png";
+        if (path.endsWith(".jpg") || path.endsWith(".jpeg")) return "image/jpeg";
+        return "text/html; charset=utf-8";
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/");
+    }
+
+    public static class Asset {
+        private final String contentType;
+        private final String cacheControl;
+        private final byte[] raw;
+        private final byte[] gzipped;
+        private final String etag;
+        private final String gzipETag;
+
+        Asset(String path, byte[] raw) throws IOException {
+            this.contentType = contentType(path);
+            // The page, script and stylesheet URLs carry no version, so the browser revalidates them
+            // on every load and the ETag turns that into a 304; a stale app.js next to a new page
+            // would break it. Images are seldom replaced under the same name and can stay cached for a day.
+            this.cacheControl = contentType.startsWith("image/") ? "public, max-age=86400" : "no-cache";
+            this.raw = raw;
+
+            byte[] compressed = null;
+            if (raw.length >= MIN_GZIP_SIZE && isCompressible(contentType)) {
+                compressed = HttpCompression.gzip(raw);
+                if (compressed.length >= raw.length) {
+                    compressed = null;
+                }
+            }
+            this.gzipped = compressed;
+
+            CRC32 crc = new CRC32();
+            crc.update(raw);
+            String hash = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(raw.length);
+            this.etag = "\"" + hash + "\"";
+            this.gzipETag = "\"" + hash + "-gz\"";
+        }
+
+        public String getContentType() { return contentType; }
+        public String getCacheControl() { return cacheControl; }
+        public boolean hasGzip() { return gzipped != null; }
+
+        // Callers must not modify the returned arrays
+        public byte[] getBody(boolean gzip) { return gzip && gzipped != null ? gzipped : raw; }
+        public String getETag(boolean gzip) { return gzip && gzipped != null ? gzipETag : etag; }
+    }
+}
@@ -1,11 +1,14 @@
 package com.ecommerce.cart;
 
+import com.ecommerce.model.Money;
 import com.ecommerce.model.Product;
 
+//One cart line; prices and totals are in cents
 public class CartItem {
     private Product product;
     private int quantity;
-    private double currentPrice;
+    private long currentPrice;
+    private long lineDiscount;
     
     public CartItem(Product product, int quantity) {
         this.product = product;
@@ -13,20 +16,42 @@ public class CartItem {
         this.currentPrice = product.getBasePrice();
     }
     
+    private CartItem(CartItem line) {
+        this.product = line.product;
+        this.quantity = line.quantity;
+        this.currentPrice = line.currentPrice;
+        this.lineDiscount = line.lineDiscount;
+    }
+    
+    // Detached copy of the line as it is now; no cart holds it, so repricing can't change it.
+    // Take it under the cart lock.
+    public CartItem copy() {
+        return new CartItem(this);
+    }
+    
     public Product getProduct() { return product; }
     public int getQuantity() { return quantity; }
-    public double getCurrentPrice() { return currentPrice; }
+    public long getCurrentPrice() { return currentPrice; }
     
-    public void setQuantity(int quantity) {
+    // Mutated only through ShoppingCart so its running totals stay in sync
+    void setQuantity(int quantity) {
         this.quantity = quantity;
     }
     
-    public void updatePrice(double newPrice) {
+    void updatePrice(long newPrice) {
         this.currentPrice = newPrice;
     }
     
-    public double getSubtotal() {
-        return currentPrice * quantity;
+    long getLineDiscount() {
+        return lineDiscount;
+    }
+    
+    void setLineDiscount(long lineDiscount) {
+        this.lineDiscount = lineDiscount;
+    }
+    
+    public long getSubtotal() {
+        return Money.times(currentPrice, quantity);
     }
 }
 
@@ -0,0 +1,8 @@
+package com.ecommerce.cart;
+
+//Listener for changes to a session's cart. Called while the cart's stripe lock is held,
+//so implementations must only copy what they need and return quickly.
+public interface CartListener {
+    // productId is the line that changed, or null when the whole cart did (discount, clear)
+    void onCartChanged(String sessionId, ShoppingCart cart, String productId);
+}
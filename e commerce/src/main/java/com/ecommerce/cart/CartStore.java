@@ -0,0 +1,199 @@
+package com.ecommerce.cart;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+//Session-keyed cart store split into lock stripes, with idle carts evicted after a TTL
+public class CartStore {
+    public static final int DEFAULT_STRIPES = 64;
+    public static final long DEFAULT_IDLE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final Stripe[] stripes;
+    private final long idleTtlMillis;
+    private final ScheduledExecutorService sweeper;
+    private volatile CartListener listener = (sessionId, cart, productId) -> { };
+
+    public CartStore() {
+        this(DEFAULT_STRIPES, DEFAULT_IDLE_TTL_MILLIS);
+    }
+
+    public CartStore(int stripeCount, long idleTtlMillis) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be positive");
+        }
+        // Round up to a power of two so the stripe index is a mask instead of a modulo
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.idleTtlMillis = idleTtlMillis;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cart-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTtlMillis / 4);
+        sweeper.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs the action against the session's cart (created on first use) while holding its stripe lock
+    public <T> T withCart(String sessionId, Function<ShoppingCart, T> action) {
+        Stripe stripe = stripeFor(sessionId);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.carts.get(sessionId);
+            if (entry == null) {
+                entry = new Entry(new ShoppingCart());
+                stripe.carts.put(sessionId, entry);
+            }
+            entry.lastAccess = System.currentTimeMillis();
+            return action.apply(entry.cart);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Like withCart, but a session without a cart sees an empty one that is not stored, so
+    // reading never allocates a cart
+    public <T> T readCart(String sessionId, Function<ShoppingCart, T> reader) {
+        Stripe stripe = stripeFor(sessionId);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.carts.get(sessionId);
+            if (entry == null) {
+                return reader.apply(new ShoppingCart());
+            }
+            entry.lastAccess = System.currentTimeMillis();
+            return reader.apply(entry.cart);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Visits every live cart, one stripe at a time, e.g. to propagate a price change
+    public void forEachCart(Consumer<ShoppingCart> action) {
+        forEachSession((sessionId, cart) -> action.accept(cart));
+    }
+    
+    public void forEachSession(BiConsumer<String, ShoppingCart> action) {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (Map.Entry<String, Entry> entry : stripe.carts.entrySet()) {
+                    action.accept(entry.getKey(), entry.getValue().cart);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    public void setListener(CartListener listener) {
+        this.listener = listener;
+    }
+
+    // Call after mutating a cart, while still inside withCart/forEachSession
+    public void cartChanged(String sessionId, ShoppingCart cart, String productId) {
+        listener.onCartChanged(sessionId, cart, productId);
+    }
+
+    public boolean anyCartMatches(Predicate<ShoppingCart> predicate) {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (Entry entry : stripe.carts.values()) {
+                    if (predicate.test(entry.cart)) {
+                        return true;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    public void remove(String sessionId) {
+        Stripe stripe = stripeFor(sessionId);
+        stripe.lock.lock();
+        try {
+            stripe.carts.remove(sessionId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total += stripe.carts.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    // Each stripe map is access-ordered, so idle carts sit at the head and the sweep stops at the first live one
+    public int evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTtlMillis;
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                Iterator<Entry> it = stripe.carts.values().iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (entry.lastAccess > cutoff) {
+                        break;
+                    }
+                    it.remove();
+                    evicted++;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return evicted;
+    }
+
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private Stripe stripeFor(String sessionId) {
+        int h = sessionId.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Entry> carts = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private static class Entry {
+        private final ShoppingCart cart;
+        private long lastAccess;
+
+        Entry(ShoppingCart cart) {
+            this.cart = cart;
+        }
+    }
+}
@@ -2,85 +2,144 @@ package com.ecommerce.cart;
 
 import com.ecommerce.model.Product;
 import com.ecommerce.strategy.DiscountStrategy;
+import com.ecommerce.strategy.PromotionPlan;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
-//Shopping Cart that uses Strategy pattern for discounts
+//Shopping Cart that uses Strategy pattern for discounts.
+//Lines are indexed by product id in insertion order, and the subtotal and line discounts are kept
+//up to date on every mutation so reads never walk the cart. Amounts are cents, so the running
+//totals are exact however many times lines are withdrawn and deposited. The strategy is compiled into a
+//PromotionPlan; its cart-level rules are applied to the running totals when they are read.
 public class ShoppingCart {
-    private List<CartItem> items = new ArrayList<>();
+    private Map<String, CartItem> items = new LinkedHashMap<>();
     private DiscountStrategy discountStrategy;
+    private PromotionPlan plan = PromotionPlan.EMPTY;
+    private long subtotal;
+    private long discount;
     
     public void addItem(Product product, int quantity) {
-        Optional<CartItem> existingItem = items.stream()
-            .filter(item -> item.getProduct().getId().equals(product.getId()))
-            .findFirst();
+        CartItem existingItem = items.get(product.getId());
         
-        if (existingItem.isPresent()) {
-            existingItem.get().setQuantity(existingItem.get().getQuantity() + quantity);
+        if (existingItem != null) {
+            withdraw(existingItem);
+            existingItem.setQuantity(existingItem.getQuantity() + quantity);
+            deposit(existingItem);
         } else {
-            items.add(new CartItem(product, quantity));
+            CartItem item = new CartItem(product, quantity);
+            items.put(product.getId(), item);
+            deposit(item);
         }
     }
     
     public void removeItem(String productId) {
-        items.removeIf(item -> item.getProduct().getId().equals(productId));
+        CartItem item = items.remove(productId);
+        if (item != null) {
+            withdraw(item);
+        }
     }
     
     public void updateQuantity(String productId, int quantity) {
-        items.stream()
-            .filter(item -> item.getProduct().getId().equals(productId))
-            .findFirst()
-            .ifPresent(item -> item.setQuantity(quantity));
+        CartItem item = items.get(productId);
+        if (item != null) {
+            withdraw(item);
+            item.setQuantity(quantity);
+            deposit(item);
+        }
     }
     
-    public void updateProductPrice(String productId, double newPrice) {
-        items.stream()
-            .filter(item -> item.getProduct().getId().equals(productId))
-            .findFirst()
-            .ifPresent(item -> item.updatePrice(newPrice));
+    public void updateProductPrice(String productId, long newPrice) {
+        CartItem item = items.get(productId);
+        if (item != null) {
+            withdraw(item);
+            item.updatePrice(newPrice);
+            deposit(item);
+        }
+    }
+    
+    public int getQuantity(String productId) {
+        CartItem item = items.get(productId);
+        return item != null ? item.getQuantity() : 0;
     }
     
     public boolean containsProduct(String productId) {
-        return items.stream()
-            .anyMatch(item -> item.getProduct().getId().equals(productId));
+        return items.containsKey(productId);
     }
     
+    // A new strategy changes every line's discount, so this is the one O(n) mutation.
+    // Pass a PromotionPlan to stack several promotions.
     public void setDiscountStrategy(DiscountStrategy strategy) {
         this.discountStrategy = strategy;
+        this.plan = PromotionPlan.of(strategy);
+        discount = 0;
+        for (CartItem item : items.values()) {
+            item.setLineDiscount(lineDiscount(item));
+            discount += item.getLineDiscount();
+        }
     }
     
-    public double calculateTotal() {
-        double subtotal = items.stream()
-            .mapToDouble(CartItem::getSubtotal)
-            .sum();
-        
-        if (discountStrategy != null) {
-            double discount = items.stream()
-                .mapToDouble(item -> discountStrategy.calculateDiscount(
-                    item.getCurrentPrice(), item.getQuantity()))
-                .sum();
-            return subtotal - discount;
-        }
-        
+    public DiscountStrategy getDiscountStrategy() {
+        return discountStrategy;
+    }
+    
+    public long getSubtotal() {
         return subtotal;
     }
     
-    public double calculateDiscount() {
-        if (discountStrategy == null) return 0;
-        
-        return items.stream()
-            .mapToDouble(item -> discountStrategy.calculateDiscount(
-                item.getCurrentPrice(), item.getQuantity()))
-            .sum();
+    public long calculateTotal() {
+        return subtotal - calculateDiscount();
+    }
+    
+    public long calculateDiscount() {
+        if (!plan.hasCartRules()) {
+            return discount;
+        }
+        return discount + plan.cartDiscount(subtotal - discount);
     }
     
+    // Copy of the list of lines; the lines themselves stay live, so use CartItem.copy() to keep them
     public List<CartItem> getItems() {
-        return new ArrayList<>(items);
+        return new ArrayList<>(items.values());
+    }
+    
+    // Read-only live view of the lines, for callers that only iterate while holding the cart
+    public Collection<CartItem> getItemsView() {
+        return Collections.unmodifiableCollection(items.values());
+    }
+    
+    public int getLineCount() {
+        return items.size();
+    }
+    
+    public boolean isEmpty() {
+        return items.isEmpty();
     }
     
     public void clear() {
         items.clear();
+        subtotal = 0;
+        discount = 0;
+    }
+    
+    private long lineDiscount(CartItem item) {
+        return plan.lineDiscount(item.getCurrentPrice(), item.getQuantity(),
+            item.getProduct().getConfigurations().get("category"));
+    }
+    
+    // Take a line's contribution out of the running totals before changing it...
+    private void withdraw(CartItem item) {
+        subtotal -= item.getSubtotal();
+        discount -= item.getLineDiscount();
+    }
+    
+    // ...and put it back afterwards
+    private void deposit(CartItem item) {
+        item.setLineDiscount(lineDiscount(item));
+        subtotal += item.getSubtotal();
+        discount += item.getLineDiscount();
     }
 }
-
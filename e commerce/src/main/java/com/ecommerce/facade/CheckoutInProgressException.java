@@ -0,0 +1,12 @@
+package com.ecommerce.facade;
+
+//Thrown when a session changes its cart or checks out again while its checkout is still paying.
+//The cart is left as it was; the client should wait for the first checkout's answer.
+public class CheckoutInProgressException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CheckoutInProgressException(String sessionId) {
+        // Expected when a client double-submits, so no stack trace is captured
+        super("Checkout already in progress for session " + sessionId, null, false, false);
+    }
+}
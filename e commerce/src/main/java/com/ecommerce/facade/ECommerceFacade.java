@@ -1,132 +1,658 @@
 package com.ecommerce.facade;
 
+import com.ecommerce.adapter.GuardedPaymentAdapter;
 import com.ecommerce.adapter.PaymentAdapter;
+import com.ecommerce.adapter.PaymentPendingException;
+import com.ecommerce.adapter.PaymentPolicy;
+import com.ecommerce.adapter.PaymentResult;
+import com.ecommerce.adapter.PaymentUnavailableException;
 import com.ecommerce.adapter.PayPalAdapter;
 import com.ecommerce.adapter.CreditCardAdapter;
+import com.ecommerce.adapter.StubPaymentGateway;
+import com.ecommerce.cart.CartStore;
 import com.ecommerce.cart.ShoppingCart;
 import com.ecommerce.cart.CartItem;
+import com.ecommerce.logging.LogLevel;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.metrics.Counter;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.metrics.MetricsRegistry;
+import com.ecommerce.model.Money;
 import com.ecommerce.model.Order;
 import com.ecommerce.model.Product;
+import com.ecommerce.model.ProductUpdate;
 import com.ecommerce.observer.CartObserver;
+import com.ecommerce.observer.CatalogVersion;
 import com.ecommerce.observer.InventoryManager;
+import com.ecommerce.observer.ProductChange;
+import com.ecommerce.observer.ProductObserver;
 import com.ecommerce.observer.ProductSubject;
+import com.ecommerce.search.NameIndex;
+import com.ecommerce.search.ProductIndex;
+import com.ecommerce.search.ProductPage;
+import com.ecommerce.search.ProductQuery;
+import com.ecommerce.service.EmailOutbox;
+import com.ecommerce.service.CatalogSnapshot;
 import com.ecommerce.service.EmailService;
+import com.ecommerce.service.OrderJournal;
 import com.ecommerce.strategy.DiscountStrategy;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 //Facade pattern to simplify interactions with the e-commerce system
 
 public class ECommerceFacade {
-    private ShoppingCart cart;
+    private static final Logger LOG = Logger.get(ECommerceFacade.class);
+    private static final ThreadLocal<List<Runnable>> DEFERRED_NOTIFICATIONS = new ThreadLocal<>();
+    private static final int RECENT_ORDERS = 10_000;
+    
+    private CartStore cartStore;
     private ProductSubject productSubject;
     private InventoryManager inventoryManager;
     private CartObserver cartObserver;
+    private CatalogVersion catalogVersion;
+    private ProductIndex productIndex = new ProductIndex();
+    private NameIndex nameIndex = new NameIndex();
     private Map<String, Product> products;
+    private EmailOutbox emailOutbox;
+    private OrderJournal orderJournal;
+    // The latest orders, oldest first, so lookups right after checkout don't read the journal
+    private Map<String, Order> recentOrders = new LinkedHashMap<>();
+    private AtomicInteger orderCount = new AtomicInteger();
+    // Sessions whose checkout is paying; their carts are frozen until it finishes
+    private Set<String> checkoutsInProgress = ConcurrentHashMap.newKeySet();
+    private PaymentPolicy paymentPolicy = PaymentPolicy.fromSystemProperties();
+    private Map<String, GuardedPaymentAdapter> paymentAdapters = new ConcurrentHashMap<>();
+    // Guard per adapter instance, so one adapter registered for several methods shares its limits
+    private Map<PaymentAdapter, GuardedPaymentAdapter> guardedAdapters = new ConcurrentHashMap<>();
+    // Checkouts whose payment timed out and that wait for the provider's late answer
+    private AtomicInteger pendingPayments = new AtomicInteger();
+    // Orders whose payment never got an answer; whether the customer was charged must be checked by hand
+    private Map<String, Order> unreconciledOrders = new ConcurrentHashMap<>();
+    private Map<String, PaymentMetrics> paymentMetrics = new ConcurrentHashMap<>();
+    private ScheduledExecutorService snapshotScheduler;
+    private Path snapshotFile;
+    private volatile long snapshotVersion = -1;
     
     public ECommerceFacade() {
-        this.cart = new ShoppingCart();
+        this(new CartStore(), new EmailOutbox(new EmailService()), openJournal(OrderJournal.defaultDirectory()));
+    }
+    
+    public ECommerceFacade(CartStore cartStore, EmailOutbox emailOutbox, OrderJournal orderJournal) {
+        this.cartStore = cartStore;
+        this.emailOutbox = emailOutbox;
+        this.orderJournal = orderJournal;
         this.productSubject = new ProductSubject();
         this.inventoryManager = new InventoryManager();
-        this.cartObserver = new CartObserver(cart);
-        this.products = new HashMap<>();
+        this.cartObserver = new CartObserver(cartStore);
+        this.catalogVersion = new CatalogVersion();
+        this.products = new ConcurrentHashMap<>();
         
         // Register observers
         productSubject.addObserver(inventoryManager);
         productSubject.addObserver(cartObserver);
+        // The catalog cache must see a change before the update request returns
+        productSubject.addSynchronousObserver(catalogVersion);
+        // Filtered queries must not see a price or stock level the catalog has already left
+        productSubject.addSynchronousObserver(productIndex);
+        // Typeahead ranking can lag a little, so it stays off the update path
+        productSubject.addObserver(nameIndex);
+        
+        try {
+            int replayed = orderJournal.replay(this::rememberOrder);
+            orderCount.set(replayed);
+            LOG.info("Recovered orders from the order journal", "count", replayed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay the order journal", e);
+        }
+        inventoryManager.setStockListener(this::onStockMoved);
+        
+        // One shared adapter per provider; -Decommerce.payment.stub=true sends every payment to a local stub
+        if (Boolean.getBoolean("ecommerce.payment.stub")) {
+            PaymentAdapter stub = StubPaymentGateway.fromSystemProperties();
+            registerPaymentAdapter("creditcard", stub);
+            registerPaymentAdapter("paypal", stub);
+        } else {
+            registerPaymentAdapter("creditcard", new CreditCardAdapter());
+            registerPaymentAdapter("paypal", new PayPalAdapter());
+        }
+    }
+    
+    private static OrderJournal openJournal(Path directory) {
+        try {
+            return new OrderJournal(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the order journal in " + directory, e);
+        }
     }
     
     public void addProduct(Product product) {
         products.put(product.getId(), product);
+        productIndex.add(product);
+        nameIndex.add(product);
         inventoryManager.onStockChanged(product, 0, product.getStock());
+        catalogVersion.bump();
     }
     
     public Product getProduct(String id) {
         return products.get(id);
     }
     
-    public void addToCart(String productId, int quantity) {
+    // Holds the stock before the item goes in, so a cart line never exceeds what can be sold.
+    // Cart changes throw CheckoutInProgressException while the session's checkout is paying.
+    public boolean addToCart(String sessionId, String productId, int quantity) {
         Product product = products.get(productId);
-        if (product != null && product.getStock() >= quantity) {
+        if (product == null || quantity <= 0) {
+            return false;
+        }
+        return mutateCart(sessionId, cart -> {
+            requireNoCheckout(sessionId);
+            int newQuantity = cart.getQuantity(productId) + quantity;
+            if (!inventoryManager.hold(sessionId, product, newQuantity)) {
+                return false;
+            }
             cart.addItem(product, quantity);
+            cartStore.cartChanged(sessionId, cart, productId);
+            return true;
+        });
+    }
+    
+    public void removeFromCart(String sessionId, String productId) {
+        Product product = products.get(productId);
+        mutateCart(sessionId, cart -> {
+            requireNoCheckout(sessionId);
+            if (product != null) {
+                inventoryManager.release(sessionId, product);
+            }
+            cart.removeItem(productId);
+            cartStore.cartChanged(sessionId, cart, productId);
+            return null;
+        });
+    }
+    
+    public boolean updateCartQuantity(String sessionId, String productId, int quantity) {
+        Product product = products.get(productId);
+        if (product == null) {
+            return false;
         }
+        return mutateCart(sessionId, cart -> {
+            requireNoCheckout(sessionId);
+            if (!cart.containsProduct(productId)) {
+                return false;
+            }
+            if (quantity <= 0) {
+                inventoryManager.release(sessionId, product);
+                cart.removeItem(productId);
+                cartStore.cartChanged(sessionId, cart, productId);
+                return true;
+            }
+            if (!inventoryManager.hold(sessionId, product, quantity)) {
+                return false;
+            }
+            cart.updateQuantity(productId, quantity);
+            cartStore.cartChanged(sessionId, cart, productId);
+            return true;
+        });
     }
     
-    public void removeFromCart(String productId) {
-        cart.removeItem(productId);
+    // Must be called under the cart lock, which checkout also takes to start and finish
+    private void requireNoCheckout(String sessionId) {
+        if (checkoutsInProgress.contains(sessionId)) {
+            throw new CheckoutInProgressException(sessionId);
+        }
     }
     
-    public void updateProductPrice(String productId, double newPrice) {
+    // Stock notifications raised while a cart stripe is locked are published after it is released:
+    // when the event bus is saturated it delivers on the caller, and CartObserver walks every stripe
+    private <T> T mutateCart(String sessionId, Function<ShoppingCart, T> action) {
+        List<Runnable> deferred = new ArrayList<>();
+        DEFERRED_NOTIFICATIONS.set(deferred);
+        try {
+            return cartStore.withCart(sessionId, action);
+        } finally {
+            DEFERRED_NOTIFICATIONS.remove();
+            for (Runnable notification : deferred) {
+                notification.run();
+            }
+        }
+    }
+    
+    private void onStockMoved(Product product, int oldStock, int newStock) {
+        Runnable notification = () -> productSubject.notifyStockChange(product, oldStock, newStock);
+        List<Runnable> deferred = DEFERRED_NOTIFICATIONS.get();
+        if (deferred != null) {
+            deferred.add(notification);
+        } else {
+            notification.run();
+        }
+    }
+    
+    // newPrice is in cents
+    public void updateProductPrice(String productId, long newPrice) {
         Product product = products.get(productId);
         if (product != null) {
-            double oldPrice = product.getBasePrice();
+            long oldPrice = product.getBasePrice();
             product.setBasePrice(newPrice);
             productSubject.notifyPriceChange(product, oldPrice, newPrice);
         }
     }
     
     public void updateProductStock(String productId, int newStock) {
+        if (newStock < 0) {
+            throw new IllegalArgumentException("Stock must not be negative");
+        }
         Product product = products.get(productId);
         if (product != null) {
-            int oldStock = product.getStock();
-            product.setStock(newStock);
+            int oldStock = product.setStock(newStock);
             productSubject.notifyStockChange(product, oldStock, newStock);
         }
     }
     
-    public void applyDiscount(DiscountStrategy strategy) {
-        cart.setDiscountStrategy(strategy);
+    // Applies a batch of catalog updates and publishes a single notification for all of them.
+    // Rejected entries don't stop the rest; their errors are returned keyed by list index.
+    public Map<Integer, String> applyProductUpdates(List<ProductUpdate> updates) {
+        Map<Integer, String> errors = new TreeMap<>();
+        Map<String, ProductChange> changes = new LinkedHashMap<>();
+        for (int i = 0; i < updates.size(); i++) {
+            ProductUpdate update = updates.get(i);
+            Product product = update.getProductId() != null ? products.get(update.getProductId()) : null;
+            if (product == null) {
+                errors.put(i, "Unknown product " + update.getProductId());
+                continue;
+            }
+            if (update.getPrice() != null && update.getPrice() < 0) {
+                errors.put(i, "Price must not be negative");
+                continue;
+            }
+            if (update.getStock() != null && update.getStock() < 0) {
+                errors.put(i, "Stock must not be negative");
+                continue;
+            }
+            
+            // Several updates to one product in a batch collapse into one change
+            ProductChange previous = changes.get(product.getId());
+            boolean priceChanged = previous != null && previous.isPriceChanged();
+            long oldPrice = priceChanged ? previous.getOldPrice() : product.getBasePrice();
+            boolean stockChanged = previous != null && previous.isStockChanged();
+            int oldStock = stockChanged ? previous.getOldStock() : product.getStock();
+            if (update.getPrice() != null) {
+                product.setBasePrice(update.getPrice());
+                priceChanged = true;
+            }
+            if (update.getStock() != null) {
+                // Holds may have moved stock since it was read above
+                int replaced = product.setStock(update.getStock());
+                if (!stockChanged) {
+                    oldStock = replaced;
+                }
+                stockChanged = true;
+            }
+            changes.put(product.getId(), new ProductChange(product, priceChanged, oldPrice, product.getBasePrice(),
+                                                           stockChanged, oldStock, product.getStock()));
+        }
+        productSubject.notifyBatch(new ArrayList<>(changes.values()));
+        return errors;
+    }
+    
+    // Replaces building the catalog product by product; observers are not told about loaded products
+    public int loadCatalogSnapshot(Path file) throws IOException {
+        int count = CatalogSnapshot.load(file, product -> {
+            products.put(product.getId(), product);
+            productIndex.add(product);
+            nameIndex.add(product);
+            inventoryManager.recordStock(product.getId(), product.getStock());
+        });
+        catalogVersion.bump();
+        snapshotVersion = catalogVersion.get();
+        return count;
+    }
+    
+    public synchronized int saveCatalogSnapshot(Path file) throws IOException {
+        long version = catalogVersion.get();
+        int count = CatalogSnapshot.write(file, products.values(), inventoryManager.getHeldTotals());
+        snapshotVersion = version;
+        return count;
+    }
+    
+    // Rewrites the snapshot in the background whenever the catalog has changed since the last one,
+    // and once more on shutdown
+    public void startCatalogSnapshots(Path file, long periodMillis) {
+        this.snapshotFile = file;
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfChanged, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private void snapshotIfChanged() {
+        if (catalogVersion.get() == snapshotVersion) {
+            return;
+        }
+        try {
+            saveCatalogSnapshot(snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Catalog snapshot failed", e);
+        }
+    }
+    
+    public void applyDiscount(String sessionId, DiscountStrategy strategy) {
+        cartStore.withCart(sessionId, cart -> {
+            requireNoCheckout(sessionId);
+            cart.setDiscountStrategy(strategy);
+            cartStore.cartChanged(sessionId, cart, null);
+            return null;
+        });
+    }
+    
+    // Reads the session's cart under its stripe lock; the cart must not escape the callback.
+    // A session without a cart reads as empty and no cart is created for it.
+    public <T> T readCart(String sessionId, Function<ShoppingCart, T> reader) {
+        return cartStore.readCart(sessionId, reader);
+    }
+    
+    // Adapters registered here are shared by every checkout for that payment method (case-insensitive)
+    // and replace the built-in ones, e.g. a stub gateway for load tests. Each is wrapped in a
+    // GuardedPaymentAdapter with the -Decommerce.payment.* policy unless it already is one.
+    public void registerPaymentAdapter(String paymentMethod, PaymentAdapter adapter) {
+        GuardedPaymentAdapter guarded = adapter instanceof GuardedPaymentAdapter
+            ? (GuardedPaymentAdapter) adapter
+            : guardedAdapters.computeIfAbsent(adapter, a -> new GuardedPaymentAdapter(a, paymentPolicy));
+        paymentAdapters.put(paymentMethod.toLowerCase(), guarded);
+    }
+    
+    // Observers added here are notified asynchronously, like the built-in ones
+    public void addProductObserver(ProductObserver observer) {
+        productSubject.addObserver(observer);
+    }
+    
+    public CartStore getCartStore() {
+        return cartStore;
+    }
+    
+    public EmailOutbox getEmailOutbox() {
+        return emailOutbox;
+    }
+    
+    // Changes whenever a product is added or its price or stock changes
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+    
+    public ProductPage queryProducts(ProductQuery query) {
+        return productIndex.query(query);
+    }
+    
+    public List<Product> suggestProducts(String query, int limit, boolean fuzzy) {
+        return nameIndex.suggest(query, limit, fuzzy);
     }
     
-    public ShoppingCart getCart() {
-        return cart;
+    // Live read-only view for iteration without copying; reflects concurrent changes
+    public Collection<Product> getProductsView() {
+        return Collections.unmodifiableCollection(products.values());
     }
     
     public Map<String, Product> getProducts() {
         return new HashMap<>(products);
     }
     
-    // Checkout and create order
-    public Order checkout(String customerEmail, String paymentMethod, String paymentDetails) {
-        if (cart.getItems().isEmpty()) {
+    // Checkout and create order. Returns null for an empty cart, missing stock or a declined payment;
+    // throws PaymentUnavailableException when the payment couldn't be made, after releasing the stock,
+    // PaymentPendingException when the provider missed the deadline and may still charge, and
+    // CheckoutInProgressException if the session is already checking out. The calling thread waits
+    // for the payment, at most until the deadline.
+    public Order checkout(String sessionId, String customerEmail, String paymentMethod, String paymentDetails) {
+        // Snapshot the cart and pin its stock under the cart lock, then pay without holding it. The
+        // cart stays frozen meanwhile, so the snapshot is exactly what gets paid for and cleared.
+        List<CartItem> orderItems = new ArrayList<>();
+        Map<Product, Integer> lines = new HashMap<>();
+        long[] total = new long[1];
+        Map<Product, Integer> reserved = mutateCart(sessionId, cart -> {
+            requireNoCheckout(sessionId);
+            // Copies, so the order keeps the prices that make up the charged total even if the
+            // catalog reprices the cart's lines before a late payment settles
+            for (CartItem item : cart.getItemsView()) {
+                orderItems.add(item.copy());
+                lines.put(item.getProduct(), item.getQuantity());
+            }
+            total[0] = cart.calculateTotal();
+            Map<Product, Integer> pinned = orderItems.isEmpty() ? null : inventoryManager.reserveForCheckout(sessionId, lines);
+            if (pinned != null) {
+                checkoutsInProgress.add(sessionId);
+            }
+            return pinned;
+        });
+        if (reserved == null) {
+            // Empty cart, or a hold expired and the stock has since been sold
             return null;
         }
-        
-        // Process payment using Adapter pattern
-        PaymentAdapter paymentAdapter;
-        if ("paypal".equalsIgnoreCase(paymentMethod)) {
-            paymentAdapter = new PayPalAdapter();
-        } else {
-            paymentAdapter = new CreditCardAdapter();
+        boolean finished = true;
+        try {
+            return pay(sessionId, customerEmail, paymentMethod, paymentDetails, orderItems, total[0], reserved);
+        } catch (PaymentPendingException e) {
+            // settleLatePayment unfreezes the cart once the provider answers or the settle deadline passes
+            finished = false;
+            throw e;
+        } finally {
+            if (finished) {
+                checkoutsInProgress.remove(sessionId);
+            }
+        }
+    }
+    
+    private Order pay(String sessionId, String customerEmail, String paymentMethod, String paymentDetails,
+                      List<CartItem> orderItems, long total, Map<Product, Integer> reserved) {
+        // Process payment using Adapter pattern; unknown methods are charged as credit cards
+        GuardedPaymentAdapter paymentAdapter = paymentMethod != null ? paymentAdapters.get(paymentMethod.toLowerCase()) : null;
+        if (paymentAdapter == null) {
+            paymentAdapter = paymentAdapters.get("creditcard");
         }
+        String provider = paymentAdapter.getPaymentProvider();
+        PaymentMetrics metrics = paymentMetrics.computeIfAbsent(provider, PaymentMetrics::new);
+        // The id is fixed up front so a pending payment can be reported against it
+        Order order = new Order(customerEmail, orderItems, total, provider);
         
-        double total = cart.calculateTotal();
-        boolean paymentSuccess = paymentAdapter.processPayment(total, paymentDetails);
+        // The guard completes the future by the payment deadline at the latest, and never exceptionally
+        long paymentStart = System.nanoTime();
+        PaymentResult payment = paymentAdapter.processPayment(total, paymentDetails, answer -> {
+            metrics.recordLate(answer);
+            settleLatePayment(sessionId, order, reserved, answer);
+        }).join();
+        metrics.record(payment, paymentStart);
         
-        if (!paymentSuccess) {
+        if (payment.isPending()) {
+            // Keep the stock and the frozen cart; releasing them could sell the goods twice
+            pendingPayments.incrementAndGet();
+            LOG.warn("Payment outcome unknown, waiting for the provider", "order", order.getOrderId(), "provider", provider);
+            throw new PaymentPendingException(provider, order.getOrderId());
+        }
+        if (!payment.isApproved()) {
+            inventoryManager.restoreHolds(sessionId, reserved);
+            if (payment.isRetryable()) {
+                throw new PaymentUnavailableException(provider, payment);
+            }
             return null;
         }
         
-        // Create order
-        List<CartItem> orderItems = new ArrayList<>(cart.getItems());
-        Order order = new Order(customerEmail, orderItems, total, paymentAdapter.getPaymentProvider());
+        awaitJournal(order, placeOrder(sessionId, order));
+        return order;
+    }
+    
+    // The provider answered a payment that had timed out, or the settle deadline passed without an
+    // answer. Runs on the provider's or the timer's thread; the session's cart has stayed frozen
+    // since, so nothing else touches its holds.
+    private void settleLatePayment(String sessionId, Order order, Map<Product, Integer> reserved, PaymentResult answer) {
+        try {
+            if (answer == PaymentResult.UNRECONCILED) {
+                // Holding the stock and the cart any longer won't tell us more; the order is kept aside
+                // so it can be placed or refunded once the provider's records show what happened
+                unreconciledOrders.put(order.getOrderId(), order);
+                inventoryManager.restoreHolds(sessionId, reserved);
+                LOG.log(LogLevel.ERROR, "Payment never answered, order needs manual reconciliation", null,
+                        "order", order.getOrderId(), "provider", order.getPaymentMethod(),
+                        "amount", Money.format(order.getTotalAmount()), "email", order.getCustomerEmail());
+            } else if (answer.isApproved()) {
+                placeOrder(sessionId, order).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        LOG.log(LogLevel.ERROR, "Order was not journaled", error, "order", order.getOrderId());
+                    }
+                });
+                LOG.info("Late payment approved, order placed", "order", order.getOrderId());
+            } else {
+                inventoryManager.restoreHolds(sessionId, reserved);
+                LOG.info("Late payment not approved, stock back in the cart", "order", order.getOrderId(),
+                         "result", answer.label());
+            }
+        } finally {
+            pendingPayments.decrementAndGet();
+            checkoutsInProgress.remove(sessionId);
+        }
+    }
+    
+    // Records a paid order: journals it, queues the confirmation and removes the ordered lines
+    private CompletableFuture<Void> placeOrder(String sessionId, Order order) {
+        // The disk flush is shared with concurrent checkouts
+        CompletableFuture<Void> journaled = orderJournal.append(order);
+        rememberOrder(order);
+        orderCount.incrementAndGet();
         
-        // Send email confirmation
-        EmailService emailService = new EmailService();
-        boolean emailSent = emailService.sendOrderConfirmation(customerEmail, order);
+        // Queue email confirmation; the outbox sends it in the background
+        boolean emailQueued = emailOutbox.enqueue(order.getCustomerEmail(), order);
         
-        if (emailSent) {
-            System.out.println("Order confirmation email sent to " + customerEmail);
-        } else {
-            System.out.println("Failed to send email, but order was created");
+        if (!emailQueued) {
+            LOG.warn("Email outbox full, order created without confirmation", "order", order.getOrderId());
         }
         
-        // Clear cart after successful checkout
-        cart.clear();
+        // The reserved stock is now sold, so removing the lines must not hand it back
+        cartStore.withCart(sessionId, cart -> {
+            for (CartItem item : order.getItems()) {
+                cart.removeItem(item.getProduct().getId());
+            }
+            cartStore.cartChanged(sessionId, cart, null);
+            return null;
+        });
+        return journaled;
+    }
+    
+    // Payment already went through, so a journal failure is reported but doesn't undo the order
+    private void awaitJournal(Order order, Future<Void> journaled) {
+        try {
+            journaled.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            LOG.log(LogLevel.ERROR, "Order was not journaled", e.getCause(), "order", order.getOrderId());
+        } catch (TimeoutException e) {
+            LOG.warn("Order is still waiting for the journal", "order", order.getOrderId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Recent orders come from memory; older ones are read back from the journal
+    public Order getOrder(String orderId) {
+        synchronized (recentOrders) {
+            Order order = recentOrders.get(orderId);
+            if (order != null) {
+                return order;
+            }
+        }
+        try {
+            return orderJournal.find(orderId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the order journal", e);
+        }
+    }
+    
+    // Checkouts waiting for the late answer to a payment that timed out
+    public int getPendingPaymentCount() {
+        return pendingPayments.get();
+    }
+    
+    // Orders given up on at the payment settle deadline, waiting for manual reconciliation
+    public Collection<Order> getUnreconciledOrders() {
+        return Collections.unmodifiableCollection(unreconciledOrders.values());
+    }
+    
+    // Orders placed, including the ones replayed from the journal at startup
+    public int getOrderCount() {
+        return orderCount.get();
+    }
+    
+    private void rememberOrder(Order order) {
+        synchronized (recentOrders) {
+            recentOrders.put(order.getOrderId(), order);
+            if (recentOrders.size() > RECENT_ORDERS) {
+                Iterator<Order> eldest = recentOrders.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+    
+    public OrderJournal getOrderJournal() {
+        return orderJournal;
+    }
+    
+    private static class PaymentMetrics {
+        private final LatencyHistogram latency;
+        private final Counter[] results = new Counter[PaymentResult.values().length];
+        private final Counter[] lateResults = new Counter[PaymentResult.values().length];
         
-        return order;
+        PaymentMetrics(String provider) {
+            MetricsRegistry registry = MetricsRegistry.getDefault();
+            latency = registry.histogram("payment_duration_seconds", "Time the payment provider took to answer",
+                                         "provider", provider);
+            for (PaymentResult result : PaymentResult.values()) {
+                results[result.ordinal()] = registry.counter("payments_total", "Payments by outcome",
+                                                             "provider", provider, "result", result.label());
+                lateResults[result.ordinal()] = registry.counter("payments_late_total",
+                    "Provider answers to payments that had already timed out", "provider", provider, "result", result.label());
+            }
+        }
+        
+        void record(PaymentResult result, long startNanos) {
+            // Rejected and fast-failed payments never reached the provider
+            if (result != PaymentResult.REJECTED && result != PaymentResult.UNAVAILABLE) {
+                latency.recordSince(startNanos);
+            }
+            results[result.ordinal()].increment();
+        }
+        
+        void recordLate(PaymentResult result) {
+            lateResults[result.ordinal()].increment();
+        }
+    }
+    
+    public void shutdown() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            snapshotIfChanged();
+        }
+        cartStore.shutdown();
+        inventoryManager.shutdown();
+        productSubject.shutdown(5_000);
+        emailOutbox.shutdown(10_000);
+        orderJournal.shutdown(5_000);
     }
 }
-
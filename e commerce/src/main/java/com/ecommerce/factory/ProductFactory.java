@@ -5,7 +5,7 @@ import java.util.Map;
 
 //Factory Method pattern for creating products
 public class ProductFactory {
-    public static Product createProduct(String type, String id, String name, double price, int stock, Map<String, String> configs) {
+    public static Product createProduct(String type, String id, String name, long price, int stock, Map<String, String> configs) {
         Product.Builder builder = new Product.Builder(id, name)
             .basePrice(price)
             .stock(stock);
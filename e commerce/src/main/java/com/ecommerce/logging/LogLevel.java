@@ -0,0 +1,6 @@
+package com.ecommerce.logging;
+
+//Severity of a log record; records below the configured level are dropped before they are queued
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR, OFF
+}
@@ -0,0 +1,208 @@
+package com.ecommerce.logging;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+//Bounded multi-producer ring of preallocated record slots, drained by one background thread that
+//formats and prints them. A logging thread claims a slot with one CAS, copies references into it
+//and publishes it; nothing is formatted or written on that thread. When the ring is full the
+//record is dropped and counted rather than blocking a request, and the count is printed once
+//the writer catches up.
+final class LogWriter {
+    private static final int PAIRS = 3;
+
+    private final Slot[] slots;
+    private final int mask;
+    // Sequence each slot was last published for; the writer only reads a slot once its sequence is there
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean idle;
+    private final Thread thread;
+    private final StringBuilder line = new StringBuilder(256);
+
+    LogWriter(int capacity) {
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(16, capacity) - 1));
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        thread = new Thread(this::drainLoop, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void append(LogLevel level, String logger, String message, Throwable error, Object[] extra,
+                Object k1, Object v1, Object k2, Object v2, Object k3, Object v3) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.time = System.currentTimeMillis();
+        slot.level = level;
+        slot.logger = logger;
+        slot.thread = Thread.currentThread().getName();
+        slot.message = message;
+        slot.error = error;
+        slot.extra = extra;
+        slot.fields[0] = k1;
+        slot.fields[1] = v1;
+        slot.fields[2] = k2;
+        slot.fields[3] = v2;
+        slot.fields[4] = k3;
+        slot.fields[5] = v3;
+        // A full fence, so either the writer sees this slot or we see it idle and wake it
+        published.set((int) sequence & mask, sequence);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Waits until everything appended so far has been written
+    void flush(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (consumed < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void drainLoop() {
+        long reportedDrops = 0;
+        while (true) {
+            // Looked up per batch so a redirected System.out is honoured
+            PrintStream out = System.out;
+            int written = 0;
+            long next = consumed;
+            while (published.get((int) next & mask) == next) {
+                Slot slot = slots[(int) next & mask];
+                try {
+                    write(out, slot);
+                } catch (RuntimeException e) {
+                    // A field whose toString() throws must not stop the writer
+                    out.println(Instant.ofEpochMilli(slot.time) + " ERROR [log-writer] LogWriter Unprintable record error=" + e);
+                } finally {
+                    slot.clear();
+                }
+                consumed = ++next;
+                written++;
+            }
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                out.println(Instant.now() + " WARN  [log-writer] LogWriter Log buffer full, records dropped count="
+                    + (drops - reportedDrops));
+                reportedDrops = drops;
+                written++;
+            }
+            if (written > 0) {
+                out.flush();
+                continue;
+            }
+            idle = true;
+            // Re-check after announcing, so an append that missed the flag is still seen
+            if (published.get((int) next & mask) != next) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            idle = false;
+        }
+    }
+
+    // 2026-01-31T12:00:00.123Z INFO  [thread] Logger message key=value key="quoted value"
+    private void write(PrintStream out, Slot slot) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(slot.time)).append(' ');
+        String level = slot.level.name();
+        line.append(level);
+        for (int i = level.length(); i < 6; i++) {
+            line.append(' ');
+        }
+        line.append('[').append(slot.thread).append("] ").append(slot.logger).append(' ').append(slot.message);
+        for (int i = 0; i < PAIRS * 2; i += 2) {
+            if (slot.fields[i] != null) {
+                appendField(slot.fields[i], slot.fields[i + 1]);
+            }
+        }
+        if (slot.extra != null) {
+            for (int i = 0; i + 1 < slot.extra.length; i += 2) {
+                appendField(slot.extra[i], slot.extra[i + 1]);
+            }
+        }
+        if (slot.error != null) {
+            appendField("error", slot.error);
+        }
+        out.append(line).append('\n');
+        if (slot.error != null && slot.level.compareTo(LogLevel.ERROR) >= 0) {
+            slot.error.printStackTrace(out);
+        }
+    }
+
+    private void appendField(Object key, Object value) {
+        line.append(' ').append(key).append('=');
+        String text = String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else if (c == '\r') {
+                line.append("\\r");
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static final class Slot {
+        private long time;
+        private LogLevel level;
+        private String logger;
+        private String thread;
+        private String message;
+        private Throwable error;
+        private Object[] extra;
+        private final Object[] fields = new Object[PAIRS * 2];
+
+        // Drops references so logged objects don't outlive the record
+        void clear() {
+            message = null;
+            error = null;
+            extra = null;
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = null;
+            }
+        }
+    }
+}
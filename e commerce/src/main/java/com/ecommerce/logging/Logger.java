@@ -0,0 +1,191 @@
+package com.ecommerce.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+//Structured logger: a fixed message plus key/value fields, written as one logfmt-style line.
+//  private static final Logger LOG = Logger.get(InventoryManager.class);
+//  LOG.debug("Stock updated", "product", id, "stock", newStock);
+//Records below the level are dropped with one comparison. Enabled records are copied into the
+//background LogWriter's ring; formatting and printing happen there. Up to three fields go through
+//fixed-arity overloads so no array is allocated; use log(...) for more. Field values are turned
+//into text later, on the writer thread, so pass values rather than objects that keep changing.
+//The level comes from -Decommerce.log.level (DEBUG, INFO, WARN, ERROR, OFF; default INFO) and the
+//ring size from -Decommerce.log.buffer (default 8192 records).
+public final class Logger {
+    private static final LogWriter WRITER = new LogWriter(Integer.getInteger("ecommerce.log.buffer", 8192));
+    private static volatile LogLevel level = parseLevel(System.getProperty("ecommerce.log.level"));
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    public static Logger get(Class<?> type) {
+        return new Logger(type.getSimpleName());
+    }
+
+    public static Logger get(String name) {
+        return new Logger(name);
+    }
+
+    public static void setLevel(LogLevel newLevel) {
+        level = newLevel;
+    }
+
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    // Waits up to timeoutMillis for queued records to be written, e.g. before the JVM exits
+    public static void flush(long timeoutMillis) {
+        WRITER.flush(timeoutMillis);
+    }
+
+    public static long getDroppedCount() {
+        return WRITER.getDroppedCount();
+    }
+
+    private static LogLevel parseLevel(String value) {
+        if (value == null || value.isBlank()) {
+            return LogLevel.INFO;
+        }
+        try {
+            return LogLevel.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level " + value + ", using INFO");
+            return LogLevel.INFO;
+        }
+    }
+
+    public boolean isEnabled(LogLevel recordLevel) {
+        return recordLevel.compareTo(level) >= 0 && recordLevel != LogLevel.OFF;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    public void debug(String message) {
+        append(LogLevel.DEBUG, message, null, null, null, null, null, null, null);
+    }
+
+    public void debug(String message, String k1, Object v1) {
+        append(LogLevel.DEBUG, message, null, k1, v1, null, null, null, null);
+    }
+
+    public void debug(String message, String k1, Object v1, String k2, Object v2) {
+        append(LogLevel.DEBUG, message, null, k1, v1, k2, v2, null, null);
+    }
+
+    public void debug(String message, String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        append(LogLevel.DEBUG, message, null, k1, v1, k2, v2, k3, v3);
+    }
+
+    public void info(String message) {
+        append(LogLevel.INFO, message, null, null, null, null, null, null, null);
+    }
+
+    public void info(String message, String k1, Object v1) {
+        append(LogLevel.INFO, message, null, k1, v1, null, null, null, null);
+    }
+
+    public void info(String message, String k1, Object v1, String k2, Object v2) {
+        append(LogLevel.INFO, message, null, k1, v1, k2, v2, null, null);
+    }
+
+    public void info(String message, String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        append(LogLevel.INFO, message, null, k1, v1, k2, v2, k3, v3);
+    }
+
+    public void warn(String message) {
+        append(LogLevel.WARN, message, null, null, null, null, null, null, null);
+    }
+
+    public void warn(String message, String k1, Object v1) {
+        append(LogLevel.WARN, message, null, k1, v1, null, null, null, null);
+    }
+
+    public void warn(String message, String k1, Object v1, String k2, Object v2) {
+        append(LogLevel.WARN, message, null, k1, v1, k2, v2, null, null);
+    }
+
+    public void warn(String message, String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        append(LogLevel.WARN, message, null, k1, v1, k2, v2, k3, v3);
+    }
+
+    public void warn(String message, Throwable error) {
+        append(LogLevel.WARN, message, error, null, null, null, null, null, null);
+    }
+
+    public void error(String message) {
+        append(LogLevel.ERROR, message, null, null, null, null, null, null, null);
+    }
+
+    public void error(String message, String k1, Object v1) {
+        append(LogLevel.ERROR, message, null, k1, v1, null, null, null, null);
+    }
+
+    public void error(String message, String k1, Object v1, String k2, Object v2) {
+        append(LogLevel.ERROR, message, null, k1, v1, k2, v2, null, null);
+    }
+
+    // The stack trace is printed too
+    public void error(String message, Throwable error) {
+        append(LogLevel.ERROR, message, error, null, null, null, null, null, null);
+    }
+
+    // Any level, an optional error, and fields as key/value pairs: the general form
+    public void log(LogLevel recordLevel, String message, Throwable error, Object... fields) {
+        if (isEnabled(recordLevel)) {
+            WRITER.append(recordLevel, name, message, error, fields.length > 0 ? fields : null,
+                          null, null, null, null, null, null);
+        }
+    }
+
+    private void append(LogLevel recordLevel, String message, Throwable error,
+                        Object k1, Object v1, Object k2, Object v2, Object k3, Object v3) {
+        if (isEnabled(recordLevel)) {
+            WRITER.append(recordLevel, name, message, error, null, k1, v1, k2, v2, k3, v3);
+        }
+    }
+
+    // A stream for libraries that print diagnostics (e.g. JavaMail's debug output); each line
+    // becomes one record at the given level
+    public PrintStream asPrintStream(LogLevel recordLevel) {
+        return new PrintStream(new LineOutputStream(recordLevel), true, StandardCharsets.UTF_8);
+    }
+
+    private class LineOutputStream extends OutputStream {
+        private final LogLevel recordLevel;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+        LineOutputStream(LogLevel recordLevel) {
+            this.recordLevel = recordLevel;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                emit();
+            } else if (b != '\r') {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            // Lines are emitted when complete; a partial line waits for its newline
+        }
+
+        private void emit() {
+            if (buffer.size() > 0) {
+                append(recordLevel, buffer.toString(StandardCharsets.UTF_8), null, null, null, null, null, null, null);
+                buffer.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.ecommerce.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//Monotonic count that many threads can bump without contending on one memory location
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
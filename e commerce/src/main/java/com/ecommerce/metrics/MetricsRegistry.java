@@ -0,0 +1,170 @@
+package com.ecommerce.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+//Named metrics and their Prometheus text exposition. Counters and histograms are created once and
+//kept by the code that records into them, so recording never touches the registry; callback
+//metrics read a value the owning component already keeps, only when scraped.
+//Labels are passed as name/value pairs: counter("http_requests_total", "...", "path", "/api/cart").
+public final class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    // Histogram buckets in seconds, from 100 µs to 10 s
+    private static final double[] BUCKET_SECONDS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = Math.round(BUCKET_SECONDS[i] * 1e9);
+        }
+    }
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    // The registry the server exposes at /api/metrics
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).series.computeIfAbsent(labels(labels), key -> new Counter());
+    }
+
+    // Nanosecond latencies, exposed in seconds
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, Type.HISTOGRAM).series
+            .computeIfAbsent(labels(labels), key -> new LatencyHistogram());
+    }
+
+    // A count the component already keeps; registering again replaces the previous source
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).series.put(labels(labels), value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series.put(labels(labels), value);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type.text);
+        }
+        return family;
+    }
+
+    // Text exposition format 0.0.4
+    public void writeTo(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP " + name + " " + family.help + "\n");
+            out.write("# TYPE " + name + " " + family.type.text + "\n");
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof LatencyHistogram) {
+                    writeHistogram(out, name, labels, (LatencyHistogram) metric);
+                } else if (metric instanceof Counter) {
+                    writeSample(out, name, labels, Long.toString(((Counter) metric).get()));
+                } else {
+                    writeSample(out, name, labels, format(((DoubleSupplier) metric).getAsDouble()));
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer out, String name, String labels, LatencyHistogram histogram)
+            throws IOException {
+        long[] cumulative = histogram.cumulativeCounts(BUCKET_NANOS);
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            writeSample(out, name + "_bucket", prefix + "le=\"" + format(BUCKET_SECONDS[i]) + "\"}",
+                Long.toString(cumulative[i]));
+        }
+        long count = cumulative[BUCKET_SECONDS.length];
+        writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"}", Long.toString(count));
+        writeSample(out, name + "_sum", labels, format(histogram.getSum() / 1e9));
+        writeSample(out, name + "_count", labels, Long.toString(count));
+    }
+
+    private static void writeSample(Writer out, String name, String labels, String value) throws IOException {
+        out.write(name);
+        out.write(labels);
+        out.write(' ');
+        out.write(value);
+        out.write('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+
+    // Rendered once when a series is created: {name="value",...}
+    private static String labels(String[] pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        if (pairs.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(pairs[i]).append("=\"");
+            String value = pairs[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static class Family {
+        private final String help;
+        private final Type type;
+        // Counter, LatencyHistogram or DoubleSupplier, keyed by rendered labels
+        private final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
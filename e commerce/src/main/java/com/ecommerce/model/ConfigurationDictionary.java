@@ -0,0 +1,46 @@
+package com.ecommerce.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Dictionary of product configurations. Keys and values are interned, and every distinct
+//configuration is stored once as a compact unmodifiable map, so the many SKUs that share
+//options (and the factory's per-type defaults) point at the same instance instead of each
+//carrying its own HashMap. Configurations are never removed; the catalog only grows.
+public final class ConfigurationDictionary {
+    private static final Map<String, String> STRINGS = new ConcurrentHashMap<>();
+    private static final Map<Map<String, String>, Map<String, String>> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    private ConfigurationDictionary() {
+    }
+
+    // Returns the shared instance equal to `configuration`; entries with null keys or values are dropped
+    public static Map<String, String> canonical(Map<String, String> configuration) {
+        if (configuration.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> interned = new HashMap<>(configuration.size() * 2);
+        for (Map.Entry<String, String> entry : configuration.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                interned.put(intern(entry.getKey()), intern(entry.getValue()));
+            }
+        }
+        Map<String, String> existing = CONFIGURATIONS.get(interned);
+        if (existing != null) {
+            return existing;
+        }
+        Map<String, String> compact = Map.copyOf(interned);
+        existing = CONFIGURATIONS.putIfAbsent(compact, compact);
+        return existing != null ? existing : compact;
+    }
+
+    public static String intern(String s) {
+        String existing = STRINGS.putIfAbsent(s, s);
+        return existing != null ? existing : s;
+    }
+
+    // Metrics
+    public static int getConfigurationCount() { return CONFIGURATIONS.size(); }
+    public static int getStringCount() { return STRINGS.size(); }
+}
@@ -0,0 +1,111 @@
+package com.ecommerce.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+//Money as a long count of cents. Prices, line totals, discounts and order totals are all plain
+//longs in cents, so sums are exact and the cart never allocates to do arithmetic.
+//Decimal amounts are only converted at the edges (JSON, seed data, payment gateways), and
+//every operation that can produce a fraction of a cent takes an explicit RoundingMode.
+public final class Money {
+    public static final int SCALE = 2;
+    public static final long CENTS_PER_UNIT = 100;
+    // Percentages are held in basis points (1% = 100) so they stay integral too
+    public static final long BASIS_POINTS_PER_PERCENT = 100;
+    private static final long BASIS_POINTS_PER_WHOLE = 100 * BASIS_POINTS_PER_PERCENT;
+
+    private Money() {
+    }
+
+    // Decimal amount such as 19.99 from JSON or seed data. Goes through the shortest decimal
+    // representation of the double, so 0.1 is ten cents rather than 0.1000000000000000055...
+    public static long fromDecimal(double amount, RoundingMode rounding) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Amount must be a finite number");
+        }
+        return toCents(BigDecimal.valueOf(amount), rounding);
+    }
+
+    public static long parse(String amount, RoundingMode rounding) {
+        try {
+            return toCents(new BigDecimal(amount.trim()), rounding);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount " + amount);
+        }
+    }
+
+    private static long toCents(BigDecimal amount, RoundingMode rounding) {
+        try {
+            return amount.setScale(SCALE, rounding).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount out of range or needs rounding: " + amount.toPlainString());
+        }
+    }
+
+    // For JSON and display; exact for any amount below 2^53 cents
+    public static double toDecimal(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    public static String format(long cents) {
+        long units = Math.abs(cents / CENTS_PER_UNIT);
+        long fraction = Math.abs(cents % CENTS_PER_UNIT);
+        return (cents < 0 ? "-" : "") + units + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    public static long times(long cents, int quantity) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+
+    // amount * basisPoints / 10000, e.g. 12.5% of $3.99 with basisPoints = 1250
+    public static long percentage(long cents, long basisPoints, RoundingMode rounding) {
+        return divide(Math.multiplyExact(cents, basisPoints), BASIS_POINTS_PER_WHOLE, rounding);
+    }
+
+    // Percentage such as 12.5 as basis points; finer fractions are rounded half-even
+    public static long basisPoints(double percent) {
+        if (Double.isNaN(percent) || Double.isInfinite(percent)) {
+            throw new IllegalArgumentException("Percentage must be a finite number");
+        }
+        return BigDecimal.valueOf(percent).movePointRight(SCALE)
+            .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    // Integer division with the remainder resolved by the rounding mode; denominator must be positive
+    public static long divide(long numerator, long denominator, RoundingMode rounding) {
+        long quotient = numerator / denominator;
+        long remainder = numerator % denominator;
+        if (remainder == 0) {
+            return quotient;
+        }
+        int sign = numerator < 0 ? -1 : 1;
+        long twice = Math.abs(remainder) * 2;
+        boolean awayFromZero;
+        switch (rounding) {
+            case UP:
+                awayFromZero = true;
+                break;
+            case DOWN:
+                awayFromZero = false;
+                break;
+            case CEILING:
+                awayFromZero = sign > 0;
+                break;
+            case FLOOR:
+                awayFromZero = sign < 0;
+                break;
+            case HALF_UP:
+                awayFromZero = twice >= denominator;
+                break;
+            case HALF_DOWN:
+                awayFromZero = twice > denominator;
+                break;
+            case HALF_EVEN:
+                awayFromZero = twice > denominator || (twice == denominator && (quotient & 1) != 0);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return awayFromZero ? quotient + sign : quotient;
+    }
+}
@@ -8,11 +8,16 @@ public class Order {
     private String orderId;
     private String customerEmail;
     private List<CartItem> items;
-    private double totalAmount;
+    private long totalAmount;
     private String paymentMethod;
     
-    public Order(String customerEmail, List<CartItem> items, double totalAmount, String paymentMethod) {
-        this.orderId = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    public Order(String customerEmail, List<CartItem> items, long totalAmount, String paymentMethod) {
+        this(UUID.randomUUID().toString().toUpperCase(), customerEmail, items, totalAmount, paymentMethod);
+    }
+    
+    // Rebuilds an existing order, e.g. when replaying the order journal
+    public Order(String orderId, String customerEmail, List<CartItem> items, long totalAmount, String paymentMethod) {
+        this.orderId = orderId;
         this.customerEmail = customerEmail;
         this.items = items;
         this.totalAmount = totalAmount;
@@ -31,7 +36,8 @@ public class Order {
         return items;
     }
     
-    public double getTotalAmount() {
+    // In cents
+    public long getTotalAmount() {
         return totalAmount;
     }
     
@@ -2,27 +2,37 @@ package com.ecommerce.model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-// Product class using Builder pattern for customizable product configurations
+// Product class using Builder pattern for customizable product configurations.
+// Kept small because catalogs hold millions of these: stock is a plain int updated through a
+// field updater rather than a separate AtomicInteger, and configurations are shared instances
+// from ConfigurationDictionary.
 public class Product {
-    private String id;
-    private String name;
-    private double basePrice;
-    private int stock;
-    private Map<String, String> configurations;
+    private static final AtomicIntegerFieldUpdater<Product> STOCK =
+        AtomicIntegerFieldUpdater.newUpdater(Product.class, "stock");
+    
+    private final String id;
+    private final String name;
+    // In cents, see Money
+    private volatile long basePrice;
+    // Units available to sell; never negative. Reservations take from it with compare-and-set, so a
+    // concurrent setStock either lands before a take (which then retries) or after it.
+    private volatile int stock;
+    private final Map<String, String> configurations;
     
     private Product(Builder builder) {
         this.id = builder.id;
         this.name = builder.name;
         this.basePrice = builder.basePrice;
         this.stock = builder.stock;
-        this.configurations = new HashMap<>(builder.configurations);
+        this.configurations = ConfigurationDictionary.canonical(builder.configurations);
     }
     
     public static class Builder {
         private String id;
         private String name;
-        private double basePrice;
+        private long basePrice;
         private int stock;
         private Map<String, String> configurations = new HashMap<>();
         
@@ -31,8 +41,8 @@ public class Product {
             this.name = name;
         }
         
-        public Builder basePrice(double price) {
-            this.basePrice = price;
+        public Builder basePrice(long cents) {
+            this.basePrice = cents;
             return this;
         }
         
@@ -59,17 +69,38 @@ public class Product {
     // Getters
     public String getId() { return id; }
     public String getName() { return name; }
-    public double getBasePrice() { return basePrice; }
+    public long getBasePrice() { return basePrice; }
     public int getStock() { return stock; }
-    public Map<String, String> getConfigurations() { return new HashMap<>(configurations); }
+    // Read-only and shared with other products; no copy is made
+    public Map<String, String> getConfigurations() { return configurations; }
     
     // Setters for Observer pattern
-    public void setBasePrice(double basePrice) {
+    public void setBasePrice(long basePrice) {
         this.basePrice = basePrice;
     }
     
-    public void setStock(int stock) {
-        this.stock = stock;
+    // Returns the stock it replaced
+    public int setStock(int stock) {
+        return STOCK.getAndSet(this, stock);
+    }
+    
+    // Takes the units only if that many are available, so the counter never dips below zero and
+    // a short request never makes a smaller one fail. Returns the stock left, or -1 if there
+    // wasn't enough.
+    public int tryTakeStock(int quantity) {
+        int current;
+        do {
+            current = stock;
+            if (current < quantity) {
+                return -1;
+            }
+        } while (!STOCK.compareAndSet(this, current, current - quantity));
+        return current - quantity;
+    }
+    
+    // Returns the stock after putting the units back
+    public int returnStock(int quantity) {
+        return STOCK.addAndGet(this, quantity);
     }
 }
 
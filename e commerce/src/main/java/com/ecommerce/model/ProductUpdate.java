@@ -0,0 +1,19 @@
+package com.ecommerce.model;
+
+//One entry of a bulk catalog update: a new price and/or stock level for a product.
+//A null price or stock leaves that field unchanged. Prices are in cents.
+public class ProductUpdate {
+    private final String productId;
+    private final Long price;
+    private final Integer stock;
+    
+    public ProductUpdate(String productId, Long price, Integer stock) {
+        this.productId = productId;
+        this.price = price;
+        this.stock = stock;
+    }
+    
+    public String getProductId() { return productId; }
+    public Long getPrice() { return price; }
+    public Integer getStock() { return stock; }
+}
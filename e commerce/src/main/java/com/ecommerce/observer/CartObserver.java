@@ -1,30 +1,85 @@
 package com.ecommerce.observer;
 
+import com.ecommerce.logging.Logger;
+import com.ecommerce.model.Money;
 import com.ecommerce.model.Product;
-import com.ecommerce.cart.ShoppingCart;
+import com.ecommerce.cart.CartItem;
+import com.ecommerce.cart.CartStore;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
-//Cart Observer that updates shopping cart when prices change
+//Cart Observer that updates every session's shopping cart when prices change
 public class CartObserver implements ProductObserver {
-    private ShoppingCart cart;
+    private static final Logger LOG = Logger.get(CartObserver.class);
     
-    public CartObserver(ShoppingCart cart) {
-        this.cart = cart;
+    private CartStore cartStore;
+    
+    public CartObserver(CartStore cartStore) {
+        this.cartStore = cartStore;
     }
     
     @Override
-    public void onPriceChanged(Product product, double oldPrice, double newPrice) {
-        if (cart.containsProduct(product.getId())) {
-            cart.updateProductPrice(product.getId(), newPrice);
-            System.out.println("Cart updated: Price changed for " + product.getName() + 
-                             " in cart from $" + oldPrice + " to $" + newPrice);
-        }
+    public void onPriceChanged(Product product, long oldPrice, long newPrice) {
+        cartStore.forEachSession((sessionId, cart) -> {
+            if (cart.containsProduct(product.getId())) {
+                cart.updateProductPrice(product.getId(), newPrice);
+                cartStore.cartChanged(sessionId, cart, product.getId());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Cart price updated", "session", sessionId, "product", product.getId(),
+                              "price", Money.format(newPrice));
+                }
+            }
+        });
     }
     
     @Override
     public void onStockChanged(Product product, int oldStock, int newStock) {
-        if (newStock == 0 && cart.containsProduct(product.getId())) {
-            System.out.println("Warning: " + product.getName() + " is out of stock!");
+        if (newStock == 0 && cartStore.anyCartMatches(cart -> cart.containsProduct(product.getId()))) {
+            LOG.info("Product in carts is out of stock", "product", product.getId());
+        }
+    }
+    
+    // One pass over all carts for the whole batch instead of one per product
+    @Override
+    public void onProductsChanged(Collection<ProductChange> changes) {
+        Map<String, Long> newPrices = new HashMap<>();
+        Set<String> soldOut = new HashSet<>();
+        for (ProductChange change : changes) {
+            if (change.isPriceChanged()) {
+                newPrices.put(change.getProduct().getId(), change.getNewPrice());
+            }
+            if (change.isStockChanged() && change.getNewStock() == 0) {
+                soldOut.add(change.getProduct().getId());
+            }
+        }
+        Set<String> soldOutInCarts = new HashSet<>();
+        int[] updatedCarts = new int[1];
+        cartStore.forEachSession((sessionId, cart) -> {
+            boolean updated = false;
+            for (CartItem item : cart.getItemsView()) {
+                String productId = item.getProduct().getId();
+                Long newPrice = newPrices.get(productId);
+                if (newPrice != null) {
+                    cart.updateProductPrice(productId, newPrice);
+                    updated = true;
+                }
+                if (soldOut.contains(productId)) {
+                    soldOutInCarts.add(productId);
+                }
+            }
+            if (updated) {
+                cartStore.cartChanged(sessionId, cart, null);
+                updatedCarts[0]++;
+            }
+        });
+        if (updatedCarts[0] > 0) {
+            LOG.debug("Cart prices updated", "priceChanges", newPrices.size(), "carts", updatedCarts[0]);
+        }
+        for (String productId : soldOutInCarts) {
+            LOG.info("Product in carts is out of stock", "product", productId);
         }
     }
 }
-
@@ -0,0 +1,33 @@
+package com.ecommerce.observer;
+
+import com.ecommerce.model.Product;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Observer that counts catalog changes so cached catalog responses know when they are stale
+public class CatalogVersion implements ProductObserver {
+    private final AtomicLong version = new AtomicLong();
+    
+    @Override
+    public void onPriceChanged(Product product, long oldPrice, long newPrice) {
+        version.incrementAndGet();
+    }
+    
+    @Override
+    public void onStockChanged(Product product, int oldStock, int newStock) {
+        version.incrementAndGet();
+    }
+    
+    @Override
+    public void onProductsChanged(Collection<ProductChange> changes) {
+        version.incrementAndGet();
+    }
+    
+    public void bump() {
+        version.incrementAndGet();
+    }
+    
+    public long get() {
+        return version.get();
+    }
+}
@@ -1,29 +1,236 @@
 package com.ecommerce.observer;
 
+import com.ecommerce.logging.Logger;
+import com.ecommerce.model.Money;
 import com.ecommerce.model.Product;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-//Inventory Manager that observes product changes and updates inventory
-
+//Inventory Manager that observes product changes and updates inventory.
+//It also holds stock for items sitting in carts: a hold takes units from Product.stock when an
+//item enters a cart, is handed back when the item leaves or the hold expires, and is kept for
+//good when the order is paid.
 public class InventoryManager implements ProductObserver {
-    private Map<String, Integer> inventory = new HashMap<>();
-    
+    public static final long DEFAULT_HOLD_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final Logger LOG = Logger.get(InventoryManager.class);
+
+    private Map<String, Integer> inventory = new ConcurrentHashMap<>();
+    // sessionId -> productId -> hold
+    private final Map<String, Map<String, Hold>> holds = new ConcurrentHashMap<>();
+    private final long holdTtlMillis;
+    private final ScheduledExecutorService expirer;
+    private volatile StockListener stockListener = (product, oldStock, newStock) -> { };
+
+    // Told whenever a hold moves units in or out of Product.stock, so observers can see it
+    public interface StockListener {
+        void onStockMoved(Product product, int oldStock, int newStock);
+    }
+
+    public InventoryManager() {
+        this(DEFAULT_HOLD_TTL_MILLIS);
+    }
+
+    public InventoryManager(long holdTtlMillis) {
+        this.holdTtlMillis = holdTtlMillis;
+        this.expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-hold-expirer");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, holdTtlMillis / 10);
+        expirer.scheduleAtFixedRate(this::releaseExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
     @Override
-    public void onPriceChanged(Product product, double oldPrice, double newPrice) {
-        System.out.println("Inventory Manager: Price changed for " + product.getName() + 
-                         " from $" + oldPrice + " to $" + newPrice);
+    public void onPriceChanged(Product product, long oldPrice, long newPrice) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Price changed", "product", product.getId(), "from", Money.format(oldPrice), "to", Money.format(newPrice));
+        }
     }
-    
+
     @Override
     public void onStockChanged(Product product, int oldStock, int newStock) {
         inventory.put(product.getId(), newStock);
-        System.out.println("Inventory Manager: Stock updated for " + product.getName() + 
-                         " from " + oldStock + " to " + newStock);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Stock updated", "product", product.getId(), "from", oldStock, "to", newStock);
+        }
     }
-    
+
+    @Override
+    public void onProductsChanged(Collection<ProductChange> changes) {
+        int stockUpdates = 0;
+        for (ProductChange change : changes) {
+            if (change.isStockChanged()) {
+                inventory.put(change.getProduct().getId(), change.getNewStock());
+                stockUpdates++;
+            }
+        }
+        LOG.info("Bulk update", "products", changes.size(), "stockChanges", stockUpdates);
+    }
+
     public int getStock(String productId) {
         return inventory.getOrDefault(productId, 0);
     }
-}
 
+    // Sets the recorded level without logging, for bulk loads such as a catalog snapshot
+    public void recordStock(String productId, int stock) {
+        inventory.put(productId, stock);
+    }
+
+    // Units currently held by carts, per product
+    public Map<String, Integer> getHeldTotals() {
+        Map<String, Integer> totals = new HashMap<>();
+        for (Map<String, Hold> sessionHolds : holds.values()) {
+            for (Hold hold : sessionHolds.values()) {
+                totals.merge(hold.product.getId(), hold.quantity, Integer::sum);
+            }
+        }
+        return totals;
+    }
+
+    public void setStockListener(StockListener listener) {
+        this.stockListener = listener;
+    }
+
+    // Changes the session's hold on a product to exactly `quantity` units (0 releases it).
+    // Calls for one session must not run concurrently; the facade makes them under the cart lock.
+    public boolean hold(String sessionId, Product product, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("quantity must not be negative");
+        }
+        // Take the hold out of the map first so the expirer can't release it while we adjust it
+        Map<String, Hold> sessionHolds = holds.get(sessionId);
+        Hold existing = sessionHolds != null ? sessionHolds.remove(product.getId()) : null;
+        int held = existing != null ? existing.quantity : 0;
+
+        int delta = quantity - held;
+        if (delta > 0) {
+            int left = product.tryTakeStock(delta);
+            if (left < 0) {
+                if (existing != null) {
+                    putHold(sessionId, new Hold(product, held, expiry()));
+                }
+                return false;
+            }
+            stockListener.onStockMoved(product, left + delta, left);
+        } else if (delta < 0) {
+            giveBack(product, -delta);
+        }
+
+        if (quantity > 0) {
+            putHold(sessionId, new Hold(product, quantity, expiry()));
+        }
+        return true;
+    }
+
+    public void release(String sessionId, Product product) {
+        hold(sessionId, product, 0);
+    }
+
+    // Before payment: make sure every line is fully held, then detach the holds so they can't
+    // expire mid-payment. Returns null (holding nothing extra) if some line can't be covered.
+    public Map<Product, Integer> reserveForCheckout(String sessionId, Map<Product, Integer> lines) {
+        Map<Product, Integer> reserved = new HashMap<>();
+        for (Map.Entry<Product, Integer> line : lines.entrySet()) {
+            if (!hold(sessionId, line.getKey(), line.getValue())) {
+                // Lines adjusted so far simply stay held for the cart
+                return null;
+            }
+            reserved.put(line.getKey(), line.getValue());
+        }
+        Map<String, Hold> sessionHolds = holds.remove(sessionId);
+        if (sessionHolds != null) {
+            // Holds for products no longer in the cart are stale; hand them back
+            for (Hold hold : sessionHolds.values()) {
+                if (!lines.containsKey(hold.product)) {
+                    giveBack(hold.product, hold.quantity);
+                }
+            }
+        }
+        return reserved;
+    }
+
+    // Payment failed: the reserved units go back to being ordinary cart holds, added to any hold
+    // the session has taken on the same product since
+    public void restoreHolds(String sessionId, Map<Product, Integer> reserved) {
+        for (Map.Entry<Product, Integer> entry : reserved.entrySet()) {
+            putHold(sessionId, new Hold(entry.getKey(), entry.getValue(), expiry()));
+        }
+    }
+
+    public int getHeldQuantity(String sessionId, String productId) {
+        Map<String, Hold> sessionHolds = holds.get(sessionId);
+        Hold hold = sessionHolds != null ? sessionHolds.get(productId) : null;
+        return hold != null ? hold.quantity : 0;
+    }
+
+    // Returns units whose holds have outlived the TTL; remove(key, value) loses cleanly to a
+    // concurrent hold() or checkout that detached the same hold first
+    public int releaseExpired() {
+        long now = System.currentTimeMillis();
+        int released = 0;
+        List<String> emptySessions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Hold>> session : holds.entrySet()) {
+            Map<String, Hold> sessionHolds = session.getValue();
+            for (Map.Entry<String, Hold> entry : sessionHolds.entrySet()) {
+                Hold hold = entry.getValue();
+                if (hold.expiresAt <= now && sessionHolds.remove(entry.getKey(), hold)) {
+                    giveBack(hold.product, hold.quantity);
+                    released += hold.quantity;
+                }
+            }
+            if (sessionHolds.isEmpty()) {
+                emptySessions.add(session.getKey());
+            }
+        }
+        // Atomic with putHold's compute, so a hold can't land in a map that is being dropped
+        for (String sessionId : emptySessions) {
+            holds.computeIfPresent(sessionId, (k, v) -> v.isEmpty() ? null : v);
+        }
+        return released;
+    }
+
+    public void shutdown() {
+        expirer.shutdownNow();
+    }
+
+    private void giveBack(Product product, int quantity) {
+        int stock = product.returnStock(quantity);
+        stockListener.onStockMoved(product, stock - quantity, stock);
+    }
+
+    // Adds to the session's hold on the product rather than replacing it, so no units go unaccounted
+    private void putHold(String sessionId, Hold hold) {
+        holds.compute(sessionId, (k, sessionHolds) -> {
+            if (sessionHolds == null) {
+                sessionHolds = new ConcurrentHashMap<>();
+            }
+            sessionHolds.merge(hold.product.getId(), hold,
+                (current, added) -> new Hold(added.product, current.quantity + added.quantity, added.expiresAt));
+            return sessionHolds;
+        });
+    }
+
+    private long expiry() {
+        return System.currentTimeMillis() + holdTtlMillis;
+    }
+
+    private static class Hold {
+        private final Product product;
+        private final int quantity;
+        private final long expiresAt;
+
+        Hold(Product product, int quantity, long expiresAt) {
+            this.product = product;
+            this.quantity = quantity;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
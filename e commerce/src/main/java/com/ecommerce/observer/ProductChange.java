@@ -0,0 +1,33 @@
+package com.ecommerce.observer;
+
+import com.ecommerce.model.Product;
+
+//Net price/stock change of one product, delivered to observers as part of a batch
+public class ProductChange {
+    private final Product product;
+    private final boolean priceChanged;
+    private final long oldPrice;
+    private final long newPrice;
+    private final boolean stockChanged;
+    private final int oldStock;
+    private final int newStock;
+
+    public ProductChange(Product product, boolean priceChanged, long oldPrice, long newPrice,
+                         boolean stockChanged, int oldStock, int newStock) {
+        this.product = product;
+        this.priceChanged = priceChanged;
+        this.oldPrice = oldPrice;
+        this.newPrice = newPrice;
+        this.stockChanged = stockChanged;
+        this.oldStock = oldStock;
+        this.newStock = newStock;
+    }
+
+    public Product getProduct() { return product; }
+    public boolean isPriceChanged() { return priceChanged; }
+    public long getOldPrice() { return oldPrice; }
+    public long getNewPrice() { return newPrice; }
+    public boolean isStockChanged() { return stockChanged; }
+    public int getOldStock() { return oldStock; }
+    public int getNewStock() { return newStock; }
+}
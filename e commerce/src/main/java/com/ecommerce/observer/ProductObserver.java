@@ -1,11 +1,23 @@
 package com.ecommerce.observer;
 
 import com.ecommerce.model.Product;
+import java.util.Collection;
 
 //Observer interface for product updates
 
 public interface ProductObserver {
-    void onPriceChanged(Product product, double oldPrice, double newPrice);
+    void onPriceChanged(Product product, long oldPrice, long newPrice);
     void onStockChanged(Product product, int oldStock, int newStock);
-}
 
+    // One notification for a bulk update; override when handling the batch as a whole is cheaper
+    default void onProductsChanged(Collection<ProductChange> changes) {
+        for (ProductChange change : changes) {
+            if (change.isPriceChanged()) {
+                onPriceChanged(change.getProduct(), change.getOldPrice(), change.getNewPrice());
+            }
+            if (change.isStockChanged()) {
+                onStockChanged(change.getProduct(), change.getOldStock(), change.getNewStock());
+            }
+        }
+    }
+}
@@ -1,32 +1,329 @@
 package com.ecommerce.observer;
 
+import com.ecommerce.logging.LogLevel;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.metrics.MetricsRegistry;
 import com.ecommerce.model.Product;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
-//Subject class that notifies observers about product changes
-
+//Subject class that notifies observers about product changes.
+//Observers are called on background consumer threads, not on the thread that changed the
+//product. Changes to a product that is already waiting for delivery are merged into the
+//pending event, so a burst of updates to one SKU reaches observers once with the latest value.
+//Each SKU always maps to the same consumer, so its events are delivered in order. When that
+//consumer's queue is full the publisher waits for room rather than delivering on its own thread;
+//only after shutdown are late events delivered on the caller.
+//Bulk updates are published as one batch event and are not merged with other events.
 public class ProductSubject {
-    private List<ProductObserver> observers = new ArrayList<>();
-    
+    private static final Logger LOG = Logger.get(ProductSubject.class);
+    public static final int DEFAULT_CONSUMERS = 1;
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final List<ProductObserver> observers = new CopyOnWriteArrayList<>();
+    private final List<ProductObserver> synchronousObservers = new CopyOnWriteArrayList<>();
+    private final Partition[] partitions;
+    private final Map<ProductObserver, LatencyHistogram> observerLatency = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dispatchedInline = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    public ProductSubject() {
+        this(DEFAULT_CONSUMERS, DEFAULT_CAPACITY);
+    }
+
+    public ProductSubject(int consumerThreads, int capacityPerConsumer) {
+        partitions = new Partition[consumerThreads];
+        for (int i = 0; i < consumerThreads; i++) {
+            partitions[i] = new Partition(capacityPerConsumer, "product-events-" + (i + 1));
+        }
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.counter("product_events_published_total", "Product change events published", this::getPublishedCount);
+        metrics.counter("product_events_coalesced_total", "Changes merged into an event still waiting for delivery",
+                        this::getCoalescedCount);
+        metrics.counter("product_events_inline_total", "Events delivered on the caller after shutdown",
+                        this::getDispatchedInlineCount);
+        metrics.counter("product_events_blocked_total", "Publishes that waited for room in a full queue",
+                        this::getBlockedCount);
+        metrics.gauge("product_events_backlog", "Events waiting for the consumer threads", this::getBacklog);
+    }
+
     public void addObserver(ProductObserver observer) {
+        observerLatency.put(observer, timer(observer, "async"));
         observers.add(observer);
     }
-    
+
+    // For cheap observers that must see a change before the notifying call returns
+    public void addSynchronousObserver(ProductObserver observer) {
+        observerLatency.put(observer, timer(observer, "sync"));
+        synchronousObservers.add(observer);
+    }
+
     public void removeObserver(ProductObserver observer) {
         observers.remove(observer);
+        synchronousObservers.remove(observer);
+        observerLatency.remove(observer);
     }
-    
-    public void notifyPriceChange(Product product, double oldPrice, double newPrice) {
-        for (ProductObserver observer : observers) {
+
+    private static LatencyHistogram timer(ProductObserver observer, String delivery) {
+        return MetricsRegistry.getDefault().histogram("product_observer_duration_seconds",
+            "Time one observer took to handle one product event", "observer", observer.getClass().getSimpleName(),
+            "delivery", delivery);
+    }
+
+    private void recordSince(ProductObserver observer, long startNanos) {
+        LatencyHistogram latency = observerLatency.get(observer);
+        if (latency != null) {
+            latency.recordSince(startNanos);
+        }
+    }
+
+    public void notifyPriceChange(Product product, long oldPrice, long newPrice) {
+        for (ProductObserver observer : synchronousObservers) {
+            long start = System.nanoTime();
             observer.onPriceChanged(product, oldPrice, newPrice);
+            recordSince(observer, start);
         }
+        publish(product, pending -> pending.mergePrice(oldPrice, newPrice));
     }
-    
+
     public void notifyStockChange(Product product, int oldStock, int newStock) {
-        for (ProductObserver observer : observers) {
+        for (ProductObserver observer : synchronousObservers) {
+            long start = System.nanoTime();
             observer.onStockChanged(product, oldStock, newStock);
+            recordSince(observer, start);
+        }
+        publish(product, pending -> pending.mergeStock(oldStock, newStock));
+    }
+
+    // One notification for a whole batch; batches go through the first consumer, so with more
+    // than one consumer they are not ordered against single-SKU events of other partitions
+    public void notifyBatch(Collection<ProductChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (ProductObserver observer : synchronousObservers) {
+            long start = System.nanoTime();
+            observer.onProductsChanged(changes);
+            recordSince(observer, start);
+        }
+        if (observers.isEmpty()) {
+            return;
+        }
+        published.incrementAndGet();
+        Batch batch = new Batch(changes);
+        if (!enqueue(partitions[0], batch)) {
+            dispatchedInline.incrementAndGet();
+            dispatch(batch);
         }
     }
-}
 
+    private void publish(Product product, Consumer<PendingChange> merge) {
+        if (observers.isEmpty()) {
+            return;
+        }
+        published.incrementAndGet();
+        Partition partition = partitions[Math.floorMod(product.getId().hashCode(), partitions.length)];
+        boolean[] isNew = new boolean[1];
+        PendingChange change = partition.pending.compute(product.getId(), (id, pending) -> {
+            if (pending == null) {
+                pending = new PendingChange(product);
+                isNew[0] = true;
+            }
+            merge.accept(pending);
+            return pending;
+        });
+
+        if (!isNew[0]) {
+            coalesced.incrementAndGet();
+            return;
+        }
+        if (!enqueue(partition, product.getId())) {
+            // Shut down: deliver on the caller rather than lose the change
+            if (partition.pending.remove(product.getId(), change)) {
+                dispatchedInline.incrementAndGet();
+                dispatch(change);
+            }
+        }
+    }
+
+    // Waits for room while running. Delivering on the caller instead would race with the consumer,
+    // which may be handing an older change to the same SKU to observers at that moment.
+    private boolean enqueue(Partition partition, Object key) {
+        if (!running) {
+            return false;
+        }
+        if (partition.keys.offer(key)) {
+            return true;
+        }
+        if (Thread.currentThread() == partition.consumer) {
+            // An observer publishing from the consumer would wait on itself; nothing else delivers
+            // for this partition meanwhile, so handing it over on this thread cannot race
+            return false;
+        }
+        blocked.incrementAndGet();
+        boolean interrupted = false;
+        try {
+            while (running) {
+                try {
+                    if (partition.keys.offer(key, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void dispatch(Batch batch) {
+        for (ProductObserver observer : observers) {
+            long start = System.nanoTime();
+            try {
+                observer.onProductsChanged(batch.changes);
+                recordSince(observer, start);
+            } catch (RuntimeException e) {
+                LOG.log(LogLevel.ERROR, "Observer failed", e, "observer", observer.getClass().getSimpleName());
+            }
+        }
+    }
+
+    private void dispatch(PendingChange change) {
+        for (ProductObserver observer : observers) {
+            long start = System.nanoTime();
+            try {
+                if (change.priceChanged) {
+                    observer.onPriceChanged(change.product, change.oldPrice, change.newPrice);
+                }
+                if (change.stockChanged) {
+                    observer.onStockChanged(change.product, change.oldStock, change.newStock);
+                }
+                recordSince(observer, start);
+            } catch (RuntimeException e) {
+                LOG.log(LogLevel.ERROR, "Observer failed", e, "observer", observer.getClass().getSimpleName());
+            }
+        }
+    }
+
+    // Lets queued events drain, then stops the consumer threads
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Partition partition : partitions) {
+            try {
+                partition.consumer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Metrics
+    public long getPublishedCount() { return published.get(); }
+    public long getCoalescedCount() { return coalesced.get(); }
+    public long getDispatchedInlineCount() { return dispatchedInline.get(); }
+    public long getBlockedCount() { return blocked.get(); }
+
+    public int getBacklog() {
+        int backlog = 0;
+        for (Partition partition : partitions) {
+            backlog += partition.keys.size();
+        }
+        return backlog;
+    }
+
+    private class Partition {
+        // Each SKU is in `keys` at most once; its merged change waits in `pending`.
+        // Batches are queued as they are.
+        private final Map<String, PendingChange> pending = new ConcurrentHashMap<>();
+        private final BlockingQueue<Object> keys;
+        private final Thread consumer;
+
+        Partition(int capacity, String threadName) {
+            this.keys = new ArrayBlockingQueue<>(capacity);
+            this.consumer = new Thread(this::consume, threadName);
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+
+        private void consume() {
+            while (running || !keys.isEmpty()) {
+                try {
+                    Object key = keys.poll(200, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        continue;
+                    }
+                    if (key instanceof Batch) {
+                        dispatch((Batch) key);
+                        continue;
+                    }
+                    // Removing first means later changes start a fresh pending event
+                    PendingChange change = pending.remove(key);
+                    if (change != null) {
+                        dispatch(change);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class Batch {
+        private final Collection<ProductChange> changes;
+
+        Batch(Collection<ProductChange> changes) {
+            this.changes = changes;
+        }
+    }
+
+    // Net effect of one or more changes: the first old value and the latest new value
+    private static class PendingChange {
+        private final Product product;
+        private boolean priceChanged;
+        private long oldPrice;
+        private long newPrice;
+        private boolean stockChanged;
+        private int oldStock;
+        private int newStock;
+
+        PendingChange(Product product) {
+            this.product = product;
+        }
+
+        void mergePrice(long oldPrice, long newPrice) {
+            if (!priceChanged) {
+                this.oldPrice = oldPrice;
+                priceChanged = true;
+            }
+            this.newPrice = newPrice;
+        }
+
+        void mergeStock(int oldStock, int newStock) {
+            if (!stockChanged) {
+                this.oldStock = oldStock;
+                stockChanged = true;
+            }
+            this.newStock = newStock;
+        }
+    }
+}
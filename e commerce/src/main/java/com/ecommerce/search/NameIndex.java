@@ -0,0 +1,294 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.observer.ProductObserver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Typeahead over product names. Every word of every name, and the whole name, is inserted into
+//a character trie, and each trie node keeps the MAX_SUGGESTIONS best-stocked products under it, so a prefix
+//lookup touches one node per typed character no matter how big the catalog is.
+//Fuzzy lookups also accept prefixes one edit away (a wrong, missing, extra or swapped letter).
+//Stock changes re-rank the lists as they arrive; a product that was pushed out of a full list
+//only gets back in when its own stock changes, so the ranking is approximate.
+public class NameIndex implements ProductObserver {
+    public static final int MAX_SUGGESTIONS = 10;
+    // Shorter fuzzy prefixes match almost anything
+    private static final int MIN_FUZZY_LENGTH = 3;
+    private static final Comparator<Product> BY_STOCK =
+        Comparator.comparingInt(Product::getStock).reversed().thenComparing(Product::getId);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+
+    public void add(Product product) {
+        lock.writeLock().lock();
+        try {
+            for (String key : keys(product.getName())) {
+                Node node = root;
+                for (int i = 0; i < key.length(); i++) {
+                    node = node.childOrCreate(key.charAt(i));
+                    node.offer(product);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onPriceChanged(Product product, long oldPrice, long newPrice) {
+        // Ranking is by stock only
+    }
+
+    @Override
+    public void onStockChanged(Product product, int oldStock, int newStock) {
+        lock.writeLock().lock();
+        try {
+            for (String key : keys(product.getName())) {
+                Node node = root;
+                for (int i = 0; i < key.length() && node != null; i++) {
+                    node = node.child(key.charAt(i));
+                    if (node != null) {
+                        node.offer(product);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Matches the query against the start of the name first. For more matches, the last word of
+    // the query is then matched as a prefix of any word, with earlier words each starting some
+    // word of the name. Exact matches come first, then fuzzy ones, each ordered by stock.
+    public List<Product> suggest(String query, int limit, boolean fuzzy) {
+        List<String> terms = words(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        limit = Math.min(limit, MAX_SUGGESTIONS);
+        String prefix = terms.get(terms.size() - 1);
+        List<String> others = terms.subList(0, terms.size() - 1);
+
+        lock.readLock().lock();
+        try {
+            Set<Product> results = new LinkedHashSet<>();
+            if (!others.isEmpty()) {
+                Node phrase = find(String.join(" ", terms));
+                if (phrase != null) {
+                    collect(List.of(phrase), List.of(), limit, results);
+                }
+            }
+            Node exact = find(prefix);
+            if (exact != null && results.size() < limit) {
+                collect(List.of(exact), others, limit, results);
+            }
+            if (fuzzy && results.size() < limit && prefix.length() >= MIN_FUZZY_LENGTH) {
+                Set<Node> near = new LinkedHashSet<>();
+                findWithinOneEdit(root, prefix, 0, false, near);
+                near.remove(exact);
+                collect(near, others, limit, results);
+            }
+            return new ArrayList<>(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Stock moves under us while we sort, so each candidate is ranked on one reading of it;
+    // comparing live values can make TimSort fail with "Comparison method violates its general contract"
+    private void collect(Iterable<Node> nodes, List<String> others, int limit, Set<Product> results) {
+        List<Ranked> candidates = new ArrayList<>();
+        for (Node node : nodes) {
+            for (int i = 0; i < node.topCount; i++) {
+                if (matchesAll(node.top[i], others)) {
+                    candidates.add(new Ranked(node.top[i]));
+                }
+            }
+        }
+        candidates.sort(Ranked.BY_STOCK);
+        for (Ranked candidate : candidates) {
+            if (results.size() >= limit) {
+                return;
+            }
+            results.add(candidate.product);
+        }
+    }
+
+    private static boolean matchesAll(Product product, List<String> terms) {
+        if (terms.isEmpty()) {
+            return true;
+        }
+        List<String> words = words(product.getName());
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    // Nodes whose path is within edit distance one of prefix
+    private static void findWithinOneEdit(Node node, String prefix, int i, boolean edited, Set<Node> out) {
+        if (i == prefix.length()) {
+            if (node.topCount > 0) {
+                out.add(node);
+            }
+            return;
+        }
+        char c = prefix.charAt(i);
+        Node next = node.child(c);
+        if (next != null) {
+            findWithinOneEdit(next, prefix, i + 1, edited, out);
+        }
+        if (edited) {
+            return;
+        }
+        // Extra letter typed
+        findWithinOneEdit(node, prefix, i + 1, true, out);
+        for (int k = 0; k < node.childCount; k++) {
+            Node child = node.children[k];
+            if (node.keys[k] != c) {
+                // Wrong letter typed
+                findWithinOneEdit(child, prefix, i + 1, true, out);
+            }
+            // Letter missed out
+            findWithinOneEdit(child, prefix, i, true, out);
+        }
+        // Two letters swapped
+        if (i + 1 < prefix.length()) {
+            Node first = node.child(prefix.charAt(i + 1));
+            Node second = first != null ? first.child(c) : null;
+            if (second != null) {
+                findWithinOneEdit(second, prefix, i + 2, true, out);
+            }
+        }
+    }
+
+    // Trie keys for a name: each distinct word, plus the whole name when it has several
+    private static List<String> keys(String name) {
+        List<String> words = words(name);
+        if (words.size() < 2) {
+            return words;
+        }
+        List<String> keys = new ArrayList<>(words);
+        keys.add(String.join(" ", words));
+        return keys;
+    }
+
+    static List<String> words(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    // A product with its stock as read once
+    private static final class Ranked {
+        static final Comparator<Ranked> BY_STOCK =
+            Comparator.comparingInt((Ranked r) -> r.stock).reversed().thenComparing(r -> r.product.getId());
+
+        private final Product product;
+        private final int stock;
+
+        Ranked(Product product) {
+            this.product = product;
+            this.stock = product.getStock();
+        }
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Product[] NO_PRODUCTS = new Product[0];
+
+        // Sorted by key; arrays rather than a map keep millions of nodes small
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        // Best-stocked products whose name has a word under this node, best first
+        private Product[] top = NO_PRODUCTS;
+        private int topCount;
+
+        Node child(char key) {
+            int i = Arrays.binarySearch(keys, 0, childCount, key);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childOrCreate(char key) {
+            int i = Arrays.binarySearch(keys, 0, childCount, key);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, at, keys, at + 1, childCount - at);
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            Node child = new Node();
+            keys[at] = key;
+            children[at] = child;
+            childCount++;
+            return child;
+        }
+
+        // Adds or re-ranks the product, dropping the weakest entry when the list is full
+        void offer(Product product) {
+            int at = -1;
+            for (int i = 0; i < topCount; i++) {
+                if (top[i] == product) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) {
+                if (topCount < MAX_SUGGESTIONS) {
+                    if (topCount == top.length) {
+                        top = Arrays.copyOf(top, Math.min(MAX_SUGGESTIONS, Math.max(2, topCount * 2)));
+                    }
+                    at = topCount++;
+                } else if (BY_STOCK.compare(product, top[topCount - 1]) < 0) {
+                    at = topCount - 1;
+                } else {
+                    return;
+                }
+                top[at] = product;
+            }
+            // At most MAX_SUGGESTIONS entries, so re-sorting is cheap; a range that short is insertion
+            // sorted, which tolerates stock changing mid-sort
+            Arrays.sort(top, 0, topCount, BY_STOCK);
+        }
+    }
+}
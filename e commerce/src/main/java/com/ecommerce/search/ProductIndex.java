@@ -0,0 +1,337 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.observer.ProductChange;
+import com.ecommerce.observer.ProductObserver;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Secondary indexes over the catalog for filtered, sorted, paged queries.
+//Every product gets a dense ordinal. Each configuration attribute value has a bitmap of the
+//ordinals carrying it, in-stock products have another bitmap, and price and name orderings
+//are kept in sorted sets. Registered as a synchronous observer, so prices and stock are
+//re-indexed before an update returns. A page is answered by intersecting bitmaps and walking
+//the chosen ordering from the cursor, instead of scanning the catalog.
+public class ProductIndex implements ProductObserver {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private Product[] products = new Product[1024];
+    // Price as indexed, so an entry can be found again after the product's price has moved
+    private long[] prices = new long[1024];
+    private int size;
+
+    // attribute -> value -> ordinals, both lower-cased
+    private final Map<String, Map<String, BitSet>> attributes = new HashMap<>();
+    private final BitSet inStock = new BitSet();
+    private final TreeSet<PriceKey> byPrice = new TreeSet<>();
+    private final TreeSet<NameKey> byName = new TreeSet<>();
+
+    public void add(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (ordinals.containsKey(product.getId())) {
+                return;
+            }
+            int ordinal = size++;
+            if (ordinal == products.length) {
+                products = Arrays.copyOf(products, ordinal * 2);
+                prices = Arrays.copyOf(prices, ordinal * 2);
+            }
+            ordinals.put(product.getId(), ordinal);
+            products[ordinal] = product;
+            prices[ordinal] = product.getBasePrice();
+            byPrice.add(new PriceKey(prices[ordinal], ordinal));
+            byName.add(new NameKey(normalize(product.getName()), ordinal));
+            inStock.set(ordinal, product.getStock() > 0);
+            // Configurations never change after build(), so attribute bitmaps only grow here
+            for (Map.Entry<String, String> config : product.getConfigurations().entrySet()) {
+                attributes.computeIfAbsent(normalize(config.getKey()), k -> new HashMap<>())
+                    .computeIfAbsent(normalize(config.getValue()), k -> new BitSet())
+                    .set(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Current values are read from the product rather than trusted from the event, since
+    // notifications from different threads can arrive out of order
+    @Override
+    public void onPriceChanged(Product product, long oldPrice, long newPrice) {
+        lock.writeLock().lock();
+        try {
+            reindexPrice(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onStockChanged(Product product, int oldStock, int newStock) {
+        lock.writeLock().lock();
+        try {
+            reindexStock(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductsChanged(Collection<ProductChange> changes) {
+        lock.writeLock().lock();
+        try {
+            for (ProductChange change : changes) {
+                reindexPrice(change.getProduct());
+                reindexStock(change.getProduct());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reindexPrice(Product product) {
+        Integer ordinal = ordinals.get(product.getId());
+        if (ordinal == null || prices[ordinal] == product.getBasePrice()) {
+            return;
+        }
+        byPrice.remove(new PriceKey(prices[ordinal], ordinal));
+        prices[ordinal] = product.getBasePrice();
+        byPrice.add(new PriceKey(prices[ordinal], ordinal));
+    }
+
+    private void reindexStock(Product product) {
+        Integer ordinal = ordinals.get(product.getId());
+        if (ordinal != null) {
+            inStock.set(ordinal, product.getStock() > 0);
+        }
+    }
+
+    public ProductPage query(ProductQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet filter = filter(query);
+            if (filter != null && filter.isEmpty()) {
+                return new ProductPage(List.of(), null);
+            }
+            List<Product> page = new ArrayList<>(query.getLimit());
+            String nextCursor;
+            switch (query.getSort()) {
+                case PRICE_ASC:
+                case PRICE_DESC:
+                    nextCursor = scanByPrice(query, filter, page);
+                    break;
+                case NAME:
+                    nextCursor = scanByName(query, filter, page);
+                    break;
+                default:
+                    nextCursor = scanByOrdinal(query, filter, page);
+            }
+            return new ProductPage(page, nextCursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Intersection of the attribute and stock bitmaps, or null when nothing narrows the catalog
+    private BitSet filter(ProductQuery query) {
+        BitSet result = null;
+        for (Map.Entry<String, Set<String>> attribute : query.getAttributes().entrySet()) {
+            Map<String, BitSet> values = attributes.get(attribute.getKey());
+            BitSet union = new BitSet();
+            if (values != null) {
+                for (String value : attribute.getValue()) {
+                    BitSet ordinalsWithValue = values.get(value);
+                    if (ordinalsWithValue != null) {
+                        union.or(ordinalsWithValue);
+                    }
+                }
+            }
+            if (result == null) {
+                result = union;
+            } else {
+                result.and(union);
+            }
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+        if (query.isInStockOnly()) {
+            if (result == null) {
+                result = (BitSet) inStock.clone();
+            } else {
+                result.and(inStock);
+            }
+        }
+        return result;
+    }
+
+    private String scanByOrdinal(ProductQuery query, BitSet filter, List<Product> page) {
+        int from = query.getCursor() == null ? 0 : parseOrdinalCursor(query.getCursor()) + 1;
+        int last = -1;
+        for (int ordinal = next(filter, from); ordinal >= 0 && ordinal < size; ordinal = next(filter, ordinal + 1)) {
+            if (!inPriceRange(query, prices[ordinal])) {
+                continue;
+            }
+            if (page.size() == query.getLimit()) {
+                return encode(String.valueOf(last));
+            }
+            page.add(products[ordinal]);
+            last = ordinal;
+        }
+        return null;
+    }
+
+    private String scanByPrice(ProductQuery query, BitSet filter, List<Product> page) {
+        boolean descending = query.getSort() == ProductQuery.Sort.PRICE_DESC;
+        PriceKey low = new PriceKey(query.getMinPrice(), Integer.MIN_VALUE);
+        PriceKey high = new PriceKey(query.getMaxPrice(), Integer.MAX_VALUE);
+        NavigableSet<PriceKey> range = byPrice.subSet(low, true, high, true);
+        if (descending) {
+            range = range.descendingSet();
+        }
+        if (query.getCursor() != null) {
+            range = range.tailSet(parsePriceCursor(query.getCursor()), false);
+        }
+        PriceKey last = null;
+        for (PriceKey key : range) {
+            if (filter != null && !filter.get(key.ordinal)) {
+                continue;
+            }
+            if (page.size() == query.getLimit()) {
+                return encode(last.price + ":" + last.ordinal);
+            }
+            page.add(products[key.ordinal]);
+            last = key;
+        }
+        return null;
+    }
+
+    private String scanByName(ProductQuery query, BitSet filter, List<Product> page) {
+        NavigableSet<NameKey> names = byName;
+        if (query.getCursor() != null) {
+            names = names.tailSet(parseNameCursor(query.getCursor()), false);
+        }
+        NameKey last = null;
+        for (NameKey key : names) {
+            if (filter != null && !filter.get(key.ordinal)) {
+                continue;
+            }
+            if (!inPriceRange(query, prices[key.ordinal])) {
+                continue;
+            }
+            if (page.size() == query.getLimit()) {
+                return encode(last.ordinal + ":" + last.name);
+            }
+            page.add(products[key.ordinal]);
+            last = key;
+        }
+        return null;
+    }
+
+    private static int next(BitSet filter, int from) {
+        return filter == null ? from : filter.nextSetBit(from);
+    }
+
+    private static boolean inPriceRange(ProductQuery query, long price) {
+        return price >= query.getMinPrice() && price <= query.getMaxPrice();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalize(String s) {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Cursors are opaque to clients: the sort key of the last product on the page
+    private static String encode(String cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    private static int parseOrdinalCursor(String cursor) {
+        int ordinal;
+        try {
+            ordinal = Integer.parseInt(decode(cursor));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        // The scan resumes at ordinal + 1, which must not wrap around either
+        if (ordinal < 0 || ordinal == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return ordinal;
+    }
+
+    private static PriceKey parsePriceCursor(String cursor) {
+        try {
+            String[] parts = decode(cursor).split(":", 2);
+            return new PriceKey(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static NameKey parseNameCursor(String cursor) {
+        try {
+            String[] parts = decode(cursor).split(":", 2);
+            return new NameKey(parts[1], Integer.parseInt(parts[0]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static class PriceKey implements Comparable<PriceKey> {
+        private final long price;
+        private final int ordinal;
+
+        PriceKey(long price, int ordinal) {
+            this.price = price;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(PriceKey other) {
+            int byPrice = Long.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Integer.compare(ordinal, other.ordinal);
+        }
+    }
+
+    private static class NameKey implements Comparable<NameKey> {
+        private final String name;
+        private final int ordinal;
+
+        NameKey(String name, int ordinal) {
+            this.name = name;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(NameKey other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Integer.compare(ordinal, other.ordinal);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import java.util.List;
+
+//One page of query results; nextCursor is null on the last page
+public class ProductPage {
+    private final List<Product> products;
+    private final String nextCursor;
+
+    public ProductPage(List<Product> products, String nextCursor) {
+        this.products = products;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Product> getProducts() { return products; }
+    public String getNextCursor() { return nextCursor; }
+}
@@ -0,0 +1,108 @@
+package com.ecommerce.search;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+//Filter, sort order and page position for a catalog query, built with the same Builder style as Product
+public class ProductQuery {
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    public enum Sort {
+        CATALOG,     // order products were added in
+        PRICE_ASC,
+        PRICE_DESC,
+        NAME
+    }
+
+    private final Map<String, Set<String>> attributes;
+    // In cents, both inclusive
+    private final long minPrice;
+    private final long maxPrice;
+    private final boolean inStockOnly;
+    private final Sort sort;
+    private final int limit;
+    private final String cursor;
+
+    private ProductQuery(Builder builder) {
+        this.attributes = Collections.unmodifiableMap(builder.attributes);
+        this.minPrice = builder.minPrice;
+        this.maxPrice = builder.maxPrice;
+        this.inStockOnly = builder.inStockOnly;
+        this.sort = builder.sort;
+        this.limit = builder.limit;
+        this.cursor = builder.cursor;
+    }
+
+    public static class Builder {
+        private final Map<String, Set<String>> attributes = new HashMap<>();
+        private long minPrice = 0;
+        private long maxPrice = Long.MAX_VALUE;
+        private boolean inStockOnly;
+        private Sort sort = Sort.CATALOG;
+        private int limit = DEFAULT_LIMIT;
+        private String cursor;
+
+        // Configuration attribute such as category or color; several values match any of them.
+        // Names and values are compared case-insensitively.
+        public Builder attribute(String name, String... values) {
+            Set<String> set = attributes.computeIfAbsent(ProductIndex.normalize(name), k -> new HashSet<>());
+            for (String value : values) {
+                set.add(ProductIndex.normalize(value));
+            }
+            return this;
+        }
+
+        public Builder minPrice(long minPrice) {
+            this.minPrice = minPrice;
+            return this;
+        }
+
+        public Builder maxPrice(long maxPrice) {
+            this.maxPrice = maxPrice;
+            return this;
+        }
+
+        public Builder inStockOnly(boolean inStockOnly) {
+            this.inStockOnly = inStockOnly;
+            return this;
+        }
+
+        public Builder sort(Sort sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            this.limit = Math.min(limit, MAX_LIMIT);
+            return this;
+        }
+
+        // The nextCursor of the previous page, or null for the first page
+        public Builder cursor(String cursor) {
+            this.cursor = cursor;
+            return this;
+        }
+
+        public ProductQuery build() {
+            if (minPrice > maxPrice) {
+                throw new IllegalArgumentException("minPrice must not exceed maxPrice");
+            }
+            return new ProductQuery(this);
+        }
+    }
+
+    public Map<String, Set<String>> getAttributes() { return attributes; }
+    public long getMinPrice() { return minPrice; }
+    public long getMaxPrice() { return maxPrice; }
+    public boolean isInStockOnly() { return inStockOnly; }
+    public Sort getSort() { return sort; }
+    public int getLimit() { return limit; }
+    public String getCursor() { return cursor; }
+}
@@ -0,0 +1,178 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Money;
+import com.ecommerce.model.Product;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+//Compact binary image of the catalog and its stock levels, so a restart can skip rebuilding
+//the catalog product by product. Configuration keys and values are stored once in a string
+//table and referenced by index, which also lets loaded products share those strings.
+//Layout: header, string table, product records, CRC32 of everything before it.
+public final class CatalogSnapshot {
+    private static final int MAGIC = 0x45434154; // "ECAT"
+    // Version 1 stored prices as doubles; version 2 stores cents
+    private static final int FORMAT_VERSION = 2;
+    private static final int DOUBLE_PRICES_VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private CatalogSnapshot() {
+    }
+
+    // Writes to a temporary file and renames it over the old snapshot, so readers never see
+    // half a snapshot. heldStock is added back to each product's stock: carts aren't restored
+    // after a restart, so units they were holding are available again.
+    public static int write(Path file, Collection<Product> products, Map<String, Integer> heldStock) throws IOException {
+        // Copy first so the count in the header matches the records even if the catalog changes
+        List<Product> copy = new ArrayList<>(products);
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        List<Map<String, String>> configurations = new ArrayList<>(copy.size());
+        for (Product product : copy) {
+            Map<String, String> config = product.getConfigurations();
+            configurations.add(config);
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                intern(entry.getKey(), stringIds, strings);
+                intern(entry.getValue(), stringIds, strings);
+            }
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream raw = Channels.newOutputStream(channel);
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(raw, 256 * 1024), crc);
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(copy.size());
+
+                out.writeInt(strings.size());
+                for (String s : strings) {
+                    writeString(out, s);
+                }
+
+                for (int i = 0; i < copy.size(); i++) {
+                    Product product = copy.get(i);
+                    writeString(out, product.getId());
+                    writeString(out, product.getName());
+                    out.writeLong(product.getBasePrice());
+                    out.writeInt(product.getStock() + heldStock.getOrDefault(product.getId(), 0));
+                    Map<String, String> config = configurations.get(i);
+                    out.writeShort(config.size());
+                    for (Map.Entry<String, String> entry : config.entrySet()) {
+                        out.writeInt(stringIds.get(entry.getKey()));
+                        out.writeInt(stringIds.get(entry.getValue()));
+                    }
+                }
+                out.flush();
+                // The checksum itself is not part of the checksummed bytes
+                new DataOutputStream(raw).writeInt((int) crc.getValue());
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return copy.size();
+    }
+
+    // Maps the file and decodes products straight from the mapping. Returns the product count.
+    public static int load(Path file, Consumer<Product> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Catalog snapshot larger than 2 GB is not supported");
+            }
+            if (size < HEADER_BYTES + 8) {
+                throw new IOException("Catalog snapshot is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            // Verify before building anything, so a bad file leaves the catalog untouched
+            ByteBuffer body = buffer.duplicate();
+            body.limit((int) size - 4);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt((int) size - 4)) {
+                throw new IOException("Catalog snapshot checksum mismatch");
+            }
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION && version != DOUBLE_PRICES_VERSION) {
+                throw new IOException("Unsupported catalog snapshot version");
+            }
+            buffer.getLong(); // written at
+            int productCount = buffer.getInt();
+
+            byte[] scratch = new byte[256];
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer, scratch);
+            }
+
+            for (int i = 0; i < productCount; i++) {
+                String id = readString(buffer, scratch);
+                String name = readString(buffer, scratch);
+                Product.Builder builder = new Product.Builder(id, name)
+                    .basePrice(version == DOUBLE_PRICES_VERSION
+                        ? Money.fromDecimal(buffer.getDouble(), RoundingMode.HALF_EVEN)
+                        : buffer.getLong())
+                    .stock(buffer.getInt());
+                int configCount = buffer.getShort() & 0xFFFF;
+                for (int c = 0; c < configCount; c++) {
+                    builder.addConfiguration(strings[buffer.getInt()], strings[buffer.getInt()]);
+                }
+                consumer.accept(builder.build());
+            }
+            return productCount;
+        }
+    }
+
+    private static void intern(String s, Map<String, Integer> ids, List<String> strings) {
+        if (!ids.containsKey(s)) {
+            ids.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = buffer.getInt();
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
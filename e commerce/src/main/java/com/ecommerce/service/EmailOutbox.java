@@ -0,0 +1,254 @@
+package com.ecommerce.service;
+
+import com.ecommerce.logging.LogLevel;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.metrics.MetricsRegistry;
+import com.ecommerce.model.Order;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+
+//Outbox that checkout enqueues confirmation emails into. A few worker threads drain it in
+//batches, each over its own long-lived SMTP connection, retrying failures with backoff.
+public class EmailOutbox {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_WORKERS = 2;
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final Logger LOG = Logger.get(EmailOutbox.class);
+
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    // SMTP servers drop idle sessions after a few minutes, so close ours first
+    private static final long IDLE_CLOSE_MILLIS = 60_000;
+
+    private final EmailService emailService;
+    private final BlockingQueue<PendingEmail> queue;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService retryScheduler;
+    // Emails waiting out a backoff; whoever removes one from here puts it back on the queue
+    private final Set<PendingEmail> waitingRetry = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram sendLatency;
+
+    public EmailOutbox(EmailService emailService) {
+        this(emailService, DEFAULT_CAPACITY, DEFAULT_WORKERS, DEFAULT_BATCH_SIZE, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public EmailOutbox(EmailService emailService, int capacity, int workerCount, int batchSize, int maxAttempts) {
+        this.emailService = emailService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "email-retry");
+            t.setDaemon(true);
+            return t;
+        });
+
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        this.sendLatency = metrics.histogram("email_send_duration_seconds",
+            "Time to hand one message to the SMTP server, including reconnecting");
+        metrics.gauge("email_outbox_queue_depth", "Emails waiting to be sent", this::getQueueDepth);
+        metrics.counter("email_enqueued_total", "Emails accepted into the outbox", this::getEnqueuedCount);
+        metrics.counter("email_sent_total", "Emails the SMTP server accepted", this::getSentCount);
+        metrics.counter("email_retried_total", "Send attempts scheduled for retry", this::getRetriedCount);
+        metrics.counter("email_failed_total", "Emails given up on", this::getFailedCount);
+        metrics.counter("email_rejected_total", "Emails dropped because the outbox was full", this::getRejectedCount);
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::drainLoop, "email-outbox-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // Returns immediately; false means the outbox is full and the email was dropped
+    public boolean enqueue(String recipientEmail, Order order) {
+        if (!running || !queue.offer(new PendingEmail(recipientEmail, order))) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    private void drainLoop() {
+        Transport transport = null;
+        int transportVersion = 0;
+        long lastUsed = 0;
+        List<PendingEmail> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEmail first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    if (transport != null && System.currentTimeMillis() - lastUsed > IDLE_CLOSE_MILLIS) {
+                        transport = close(transport);
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                // A reconfigured EmailService may point at another server, so reconnect
+                int version = emailService.getConfigVersion();
+                if (transport != null && transportVersion != version) {
+                    transport = close(transport);
+                }
+                transport = sendBatch(transport, batch);
+                transportVersion = version;
+                lastUsed = System.currentTimeMillis();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        close(transport);
+    }
+
+    private Transport sendBatch(Transport transport, List<PendingEmail> batch) {
+        if (!emailService.isConfigured()) {
+            for (PendingEmail email : batch) {
+                giveUp(email, "EmailService not configured");
+            }
+            return transport;
+        }
+
+        for (PendingEmail email : batch) {
+            Message message;
+            try {
+                message = emailService.createOrderConfirmation(email.recipient, email.order);
+            } catch (MessagingException e) {
+                // A malformed address won't get better on retry
+                email.attempts++;
+                giveUp(email, e.getMessage());
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (transport == null || !transport.isConnected()) {
+                    close(transport);
+                    transport = emailService.openTransport();
+                }
+                transport.sendMessage(message, message.getAllRecipients());
+                sendLatency.recordSince(start);
+                sent.incrementAndGet();
+                LOG.debug("Order confirmation sent", "order", email.order.getOrderId(), "to", email.recipient);
+            } catch (MessagingException e) {
+                // The connection may be in an unknown state after a failure, so start fresh next time
+                transport = close(transport);
+                scheduleRetry(email, e);
+            }
+        }
+        return transport;
+    }
+
+    private void scheduleRetry(PendingEmail email, MessagingException cause) {
+        email.attempts++;
+        if (email.attempts >= maxAttempts || !running) {
+            giveUp(email, cause.getMessage());
+            return;
+        }
+        retried.incrementAndGet();
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (email.attempts - 1));
+        LOG.debug("Order confirmation will be retried", "order", email.order.getOrderId(),
+                  "attempts", email.attempts, "backoffMs", backoff);
+        waitingRetry.add(email);
+        try {
+            retryScheduler.schedule(() -> requeue(email, "outbox full on retry"), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: no more backoff, it goes out with the rest of the queue
+            requeue(email, "outbox full at shutdown");
+        }
+    }
+
+    private void requeue(PendingEmail email, String reasonIfFull) {
+        if (waitingRetry.remove(email) && !queue.offer(email)) {
+            giveUp(email, reasonIfFull);
+        }
+    }
+
+    private void giveUp(PendingEmail email, String reason) {
+        failed.incrementAndGet();
+        LOG.log(LogLevel.WARN, "Gave up on order confirmation", null, "order", email.order.getOrderId(),
+            "to", email.recipient, "attempts", email.attempts, "reason", reason);
+    }
+
+    private static Transport close(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException ignored) {
+                // Connection already gone
+            }
+        }
+        return null;
+    }
+
+    // Stops accepting work, lets workers send what is already queued (retries waiting out their
+    // backoff included), then stops them. Anything still unsent at the deadline counts as failed.
+    public void shutdown(long timeoutMillis) {
+        retryScheduler.shutdownNow();
+        for (PendingEmail email : waitingRetry) {
+            requeue(email, "outbox full at shutdown");
+        }
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        PendingEmail unsent;
+        while ((unsent = queue.poll()) != null) {
+            giveUp(unsent, "not sent before shutdown");
+        }
+    }
+
+    // Metrics
+    public int getQueueDepth() { return queue.size(); }
+    public long getEnqueuedCount() { return enqueued.get(); }
+    public long getSentCount() { return sent.get(); }
+    public long getRetriedCount() { return retried.get(); }
+    public long getFailedCount() { return failed.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+
+    private static class PendingEmail {
+        private final String recipient;
+        private final Order order;
+        private int attempts;
+
+        PendingEmail(String recipient, Order order) {
+            this.recipient = recipient;
+            this.order = order;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.ecommerce.service;
 
+import com.ecommerce.logging.LogLevel;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.model.Money;
 import com.ecommerce.model.Order;
 import com.ecommerce.cart.CartItem;
 import java.util.Properties;
@@ -7,6 +10,8 @@ import javax.mail.*;
 import javax.mail.internet.*;
 
 public class EmailService {
+    private static final Logger LOG = Logger.get(EmailService.class);
+
     // Gmail SMTP configuration
     private static final String DEFAULT_SMTP_HOST = "smtp.gmail.com";
     private static final String DEFAULT_SMTP_PORT = "587";
@@ -19,27 +24,60 @@ public class EmailService {
     private static String SENDER_EMAIL = "dovutbekovulukbek@gmail.com";
     private static String SENDER_PASSWORD = "ozxs wfqo jfpm sstx";
 
+    private static boolean USE_AUTH = true;
+    private static boolean USE_STARTTLS = true;
+
+    // Bumped by every configure call, so existing services rebuild their Session on next use
+    private static volatile int configVersion;
+
     // Public method for configuring email settings at app startup
-    public static void configure(String senderEmail, String senderPassword, String smtpHost, String smtpPort) {
+    public static synchronized void configure(String senderEmail, String senderPassword, String smtpHost, String smtpPort) {
         if (senderEmail != null && !senderEmail.isBlank()) SENDER_EMAIL = senderEmail;
         if (senderPassword != null && !senderPassword.isBlank()) SENDER_PASSWORD = senderPassword;
         if (smtpHost != null && !smtpHost.isBlank()) SMTP_HOST = smtpHost;
         if (smtpPort != null && !smtpPort.isBlank()) SMTP_PORT = smtpPort;
+        configVersion++;
     }
 
-    public boolean sendOrderConfirmation(String recipientEmail, Order order) {
-        if (SENDER_EMAIL == null || SENDER_EMAIL.isBlank() || SENDER_PASSWORD == null || SENDER_PASSWORD.isBlank()) {
-            System.err.println("EmailService not configured: set MAIL_USER and MAIL_PASS environment variables (or EMAIL_USER / EMAIL_PASS) or call EmailService.configure(...) in Main.");
-            return false;
+    // Enables SMTP AUTH and STARTTLS (on by default for Gmail); a local stand-in server needs neither
+    public static synchronized void configureSecurity(boolean auth, boolean startTls) {
+        USE_AUTH = auth;
+        USE_STARTTLS = startTls;
+        configVersion++;
+    }
+
+    private Session session;
+    private int sessionVersion;
+
+    // Changes whenever configure or configureSecurity is called; connections opened under an
+    // older version should be closed
+    public int getConfigVersion() {
+        return configVersion;
+    }
+
+    // One Session is shared by every message sent through this service until the configuration
+    // changes; then the next message builds a new one
+    private synchronized Session session() {
+        int version = configVersion;
+        if (session == null || sessionVersion != version) {
+            session = createSession();
+            sessionVersion = version;
         }
+        return session;
+    }
 
+    // JavaMail's SMTP transcript is only produced at debug level, and then goes through the logger
+    // rather than stdout
+    private static synchronized Session createSession() {
         Properties props = new Properties();
-        props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.starttls.enable", "true");
-        props.put("mail.smtp.starttls.required", "true");
+        props.put("mail.smtp.auth", String.valueOf(USE_AUTH));
+        props.put("mail.smtp.starttls.enable", String.valueOf(USE_STARTTLS));
+        props.put("mail.smtp.starttls.required", String.valueOf(USE_STARTTLS));
         props.put("mail.smtp.host", SMTP_HOST);
         props.put("mail.smtp.port", SMTP_PORT);
         props.put("mail.smtp.ssl.trust", SMTP_HOST);
+        props.put("mail.smtp.connectiontimeout", "10000");
+        props.put("mail.smtp.timeout", "10000");
 
         Session session = Session.getInstance(props, new Authenticator() {
             @Override
@@ -47,32 +85,66 @@ public class EmailService {
                 return new PasswordAuthentication(SENDER_EMAIL, SENDER_PASSWORD);
             }
         });
+        if (LOG.isDebugEnabled()) {
+            session.setDebugOut(LOG.asPrintStream(LogLevel.DEBUG));
+            session.setDebug(true);
+        }
+        return session;
+    }
 
-        // Enable JavaMail debug (prints full SMTP dialog)
-        session.setDebug(true);
+    public boolean isConfigured() {
+        if (!USE_AUTH) {
+            return SENDER_EMAIL != null && !SENDER_EMAIL.isBlank();
+        }
+        return SENDER_EMAIL != null && !SENDER_EMAIL.isBlank() && SENDER_PASSWORD != null && !SENDER_PASSWORD.isBlank();
+    }
 
-        try {
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(SENDER_EMAIL));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(recipientEmail));
-            message.setSubject("Order Confirmation #" + order.getOrderId());
+    public boolean sendOrderConfirmation(String recipientEmail, Order order) {
+        if (!isConfigured()) {
+            LOG.warn("EmailService not configured: set MAIL_USER and MAIL_PASS environment variables (or EMAIL_USER / EMAIL_PASS) or call EmailService.configure(...) in Main.");
+            return false;
+        }
 
-            String emailBody = buildEmailBody(order);
-            message.setContent(emailBody, "text/html; charset=utf-8");
+        try {
+            Message message = createOrderConfirmation(recipientEmail, order);
 
-            System.out.println("Using SMTP host: " + SMTP_HOST + ", port: " + SMTP_PORT + ", user: " + SENDER_EMAIL + " to send to " + recipientEmail);
+            LOG.debug("Sending email", "host", SMTP_HOST, "port", SMTP_PORT, "to", recipientEmail);
             Transport.send(message);
-            System.out.println("Email sent successfully to " + recipientEmail);
+            LOG.info("Email sent", "to", recipientEmail, "order", order.getOrderId());
             return true;
 
         } catch (MessagingException e) {
-            System.err.println("Failed to send email to " + recipientEmail + ": " + e.getMessage());
-            System.err.println("Common causes: wrong MAIL_USER/MAIL_PASS, Gmail requires app-password, network/firewall issues, or SMTP port blocked.");
-            e.printStackTrace();
+            // Common causes: wrong MAIL_USER/MAIL_PASS, Gmail requires an app password, network/firewall issues, or SMTP port blocked
+            LOG.log(LogLevel.ERROR, "Failed to send email", e, "to", recipientEmail, "host", SMTP_HOST, "port", SMTP_PORT);
             return false;
         }
     }
 
+    public Message createOrderConfirmation(String recipientEmail, Order order) throws MessagingException {
+        Message message = new MimeMessage(session());
+        message.setFrom(new InternetAddress(SENDER_EMAIL));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(recipientEmail));
+        message.setSubject("Order Confirmation #" + order.getOrderId());
+
+        String emailBody = buildEmailBody(order);
+        message.setContent(emailBody, "text/html; charset=utf-8");
+        message.saveChanges();
+        return message;
+    }
+
+    // Opens a connected SMTP transport that callers keep and reuse for many messages
+    public Transport openTransport() throws MessagingException {
+        Transport transport = session().getTransport("smtp");
+        synchronized (EmailService.class) {
+            if (USE_AUTH) {
+                transport.connect(SMTP_HOST, Integer.parseInt(SMTP_PORT), SENDER_EMAIL, SENDER_PASSWORD);
+                return transport;
+            }
+        }
+        transport.connect();
+        return transport;
+    }
+
     private String buildEmailBody(Order order) {
         StringBuilder body = new StringBuilder();
         body.append("<html><body style='font-family: Arial, sans-serif;'>");
@@ -89,13 +161,13 @@ public class EmailService {
             body.append("<tr>");
             body.append("<td>").append(item.getProduct().getName()).append("</td>");
             body.append("<td>").append(item.getQuantity()).append("</td>");
-            body.append("<td>").append(String.format("$%.2f", item.getCurrentPrice())).append("</td>");
-            body.append("<td>").append(String.format("$%.2f", item.getSubtotal())).append("</td>");
+            body.append("<td>").append("$" + Money.format(item.getCurrentPrice())).append("</td>");
+            body.append("<td>").append("$" + Money.format(item.getSubtotal())).append("</td>");
             body.append("</tr>");
         }
 
         body.append("</table>");
-        body.append("<h3 style='color: #28a745;'>Total: ").append(String.format("$%.2f", order.getTotalAmount())).append("</h3>");
+        body.append("<h3 style='color: #28a745;'>Total: ").append("$" + Money.format(order.getTotalAmount())).append("</h3>");
         body.append("<p><strong>Payment Method:</strong> ").append(order.getPaymentMethod()).append("</p>");
         body.append("<hr/>");
         body.append("<p style='color: #666;'>Best regards,<br/>E-Commerce Team</p>");
@@ -0,0 +1,130 @@
+package com.ecommerce.service;
+
+import com.ecommerce.logging.Logger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Minimal in-process SMTP sink for local runs and load tests. It speaks just enough SMTP
+//(no AUTH, no TLS) for JavaMail to deliver, counts what it receives and throws the mail away.
+//Point EmailService at it with configure(..., "localhost", port) and configureSecurity(false, false).
+public class LocalSmtpServer {
+    private static final Logger LOG = Logger.get(LocalSmtpServer.class);
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final long delayMillisPerMessage;
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+    private volatile boolean running = true;
+
+    public LocalSmtpServer(int port) throws IOException {
+        this(port, 0);
+    }
+
+    // delayMillisPerMessage simulates a slow relay by stalling before each DATA acknowledgement
+    public LocalSmtpServer(int port, long delayMillisPerMessage) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.delayMillisPerMessage = delayMillisPerMessage;
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "local-smtp");
+            t.setDaemon(true);
+            return t;
+        });
+        connections.execute(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.get();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionsAccepted.incrementAndGet();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Local SMTP accept failed", "error", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)) {
+            reply(out, "220 localhost ESMTP stand-in");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (command) {
+                    case "EHLO":
+                        reply(out, "250-localhost\r\n250 8BITMIME");
+                        break;
+                    case "DATA":
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !".".equals(line)) {
+                            // Discard message content
+                        }
+                        if (delayMillisPerMessage > 0) {
+                            Thread.sleep(delayMillisPerMessage);
+                        }
+                        messagesReceived.incrementAndGet();
+                        reply(out, "250 OK queued");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 Bye");
+                        return;
+                    case "HELO":
+                    case "MAIL":
+                    case "RCPT":
+                    case "RSET":
+                    case "NOOP":
+                        reply(out, "250 OK");
+                        break;
+                    default:
+                        reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reply(Writer out, String response) throws IOException {
+        out.write(response);
+        out.write("\r\n");
+        out.flush();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,424 @@
+package com.ecommerce.service;
+
+import com.ecommerce.cart.CartItem;
+import com.ecommerce.logging.Logger;
+import com.ecommerce.model.Money;
+import com.ecommerce.model.Order;
+import com.ecommerce.model.Product;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+//Append-only journal of placed orders, split into numbered segment files.
+//Checkouts hand their order to a single writer thread, which writes everything queued so far
+//and then forces it to disk once, so concurrent checkouts share one fsync (group commit).
+//Each record is [length][CRC32][payload]; on startup a torn or corrupt tail left by a crash is
+//cut off the last segment, and replay() hands back every order that was committed. Orders are not
+//kept in memory here; find() reads one back from disk.
+public class OrderJournal {
+    private static final Logger LOG = Logger.get(OrderJournal.class);
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int MAX_GROUP = 1024;
+
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    // Version 1 records held amounts as doubles; version 2 holds cents
+    private static final byte FORMAT_VERSION = 2;
+    private static final byte DOUBLE_AMOUNTS_VERSION = 1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final BlockingQueue<PendingRecord> queue;
+    // Segments and the length of their valid prefix as found at startup; replay reads only these
+    private final List<Segment> recovered = new ArrayList<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private FileChannel active;
+    private int activeIndex;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong truncatedBytes = new AtomicLong();
+
+    public OrderJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_CAPACITY);
+    }
+
+    public OrderJournal(Path directory, long segmentBytes, int capacity) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        Files.createDirectories(directory);
+        recover();
+        openActiveSegment();
+        writer = new Thread(this::writeLoop, "order-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // -Decommerce.journalDir, defaulting to data/orders under the working directory
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("ecommerce.journalDir", "data/orders"));
+    }
+
+    // Completes once the order is on disk. Blocks only while the journal queue is full.
+    public CompletableFuture<Void> append(Order order) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (!running) {
+            durable.completeExceptionally(new IllegalStateException("Order journal is shut down"));
+            return durable;
+        }
+        // Encode on the caller so the writer thread only does I/O
+        PendingRecord record = new PendingRecord(encodeRecord(order), durable);
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            durable.completeExceptionally(e);
+        }
+        return durable;
+    }
+
+    // Feeds every order recovered at startup to the consumer, oldest first
+    public int replay(Consumer<Order> consumer) throws IOException {
+        int count = 0;
+        for (Segment segment : recovered) {
+            try (InputStream in = Channels.newInputStream(FileChannel.open(segment.path, StandardOpenOption.READ))) {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+                long position = 0;
+                while (position < segment.validBytes) {
+                    byte[] payload = readRecord(data);
+                    consumer.accept(decode(payload));
+                    position += HEADER_BYTES + payload.length;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Reads the segments back, newest first, and returns the order or null. Every lookup scans the
+    // journal, so callers keep recent orders in memory and come here only for older ones.
+    public Order find(String orderId) throws IOException {
+        List<Path> segments = listSegments();
+        Collections.reverse(segments);
+        for (Path path : segments) {
+            try (InputStream in = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ))) {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+                while (true) {
+                    byte[] payload;
+                    try {
+                        payload = readRecord(data);
+                    } catch (EOFException | CorruptRecordException e) {
+                        // End of the segment, or a record the writer hasn't finished yet
+                        break;
+                    }
+                    if (orderId.equals(decodeOrderId(payload))) {
+                        return decode(payload);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void writeLoop() {
+        List<PendingRecord> group = new ArrayList<>(MAX_GROUP);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, MAX_GROUP - 1);
+                commit(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingRecord> group) {
+        long start = -1;
+        try {
+            ByteBuffer[] buffers = new ByteBuffer[group.size()];
+            long bytes = 0;
+            for (int i = 0; i < group.size(); i++) {
+                buffers[i] = ByteBuffer.wrap(group.get(i).bytes);
+                bytes += group.get(i).bytes.length;
+            }
+            if (active.size() > 0 && active.size() + bytes > segmentBytes) {
+                rollSegment();
+            }
+            start = active.size();
+            while (bytes > 0) {
+                bytes -= active.write(buffers);
+            }
+            active.force(false);
+            commits.incrementAndGet();
+            appended.addAndGet(group.size());
+            for (PendingRecord record : group) {
+                record.durable.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            discardPartialWrite(start);
+            for (PendingRecord record : group) {
+                record.durable.completeExceptionally(e);
+            }
+        }
+    }
+
+    // A half-written group would hide every later record from recovery, so cut it off
+    private void discardPartialWrite(long start) {
+        if (start < 0) {
+            return;
+        }
+        try {
+            active.truncate(start);
+        } catch (IOException e) {
+            LOG.error("Failed to discard partial write", "error", e.getMessage());
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        active.force(false);
+        active.close();
+        activeIndex++;
+        active = FileChannel.open(segmentPath(activeIndex), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(OrderJournal::isSegment).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            long valid = scanValidBytes(path);
+            long size = Files.size(path);
+            if (valid < size) {
+                truncatedBytes.addAndGet(size - valid);
+                if (i == segments.size() - 1) {
+                    // A torn write from a crash; the checkouts behind it were never acknowledged
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(valid);
+                        channel.force(true);
+                    }
+                    LOG.warn("Dropped incomplete records", "segment", path.getFileName(), "bytes", size - valid);
+                } else {
+                    // Older segments are never appended to again, so corruption there is left for inspection
+                    LOG.error("Segment is corrupt, ignoring the rest", "segment", path.getFileName(), "offset", valid);
+                }
+            }
+            recovered.add(new Segment(path, valid));
+            activeIndex = segmentIndex(path);
+        }
+    }
+
+    private long scanValidBytes(Path path) throws IOException {
+        long valid = 0;
+        try (InputStream in = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ))) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+            while (true) {
+                byte[] payload;
+                try {
+                    payload = readRecord(data);
+                } catch (EOFException | CorruptRecordException e) {
+                    return valid;
+                }
+                valid += HEADER_BYTES + payload.length;
+            }
+        }
+    }
+
+    private void openActiveSegment() throws IOException {
+        Path path = segmentPath(activeIndex);
+        if (Files.exists(path) && Files.size(path) >= segmentBytes) {
+            activeIndex++;
+            path = segmentPath(activeIndex);
+        }
+        active = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Stops accepting orders, commits what is already queued, then closes the active segment
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            active.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close segment", "error", e.getMessage());
+        }
+    }
+
+    // Metrics
+    public long getAppendedCount() { return appended.get(); }
+    public long getCommitCount() { return commits.get(); }
+    public long getTruncatedBytes() { return truncatedBytes.get(); }
+    public int getQueueDepth() { return queue.size(); }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int segmentIndex(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static byte[] readRecord(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        int crc = data.readInt();
+        if (length <= 0 || length > MAX_RECORD_BYTES) {
+            throw new CorruptRecordException();
+        }
+        byte[] payload = new byte[length];
+        data.readFully(payload);
+        if (crc(payload) != crc) {
+            throw new CorruptRecordException();
+        }
+        return payload;
+    }
+
+    private static byte[] encodeRecord(Order order) {
+        byte[] payload = encode(order);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(crc(payload));
+        record.put(payload);
+        return record.array();
+    }
+
+    private static byte[] encode(Order order) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(order.getOrderId());
+            out.writeUTF(order.getCustomerEmail());
+            out.writeUTF(order.getPaymentMethod());
+            out.writeLong(order.getTotalAmount());
+            out.writeInt(order.getItems().size());
+            for (CartItem item : order.getItems()) {
+                out.writeUTF(item.getProduct().getId());
+                out.writeUTF(item.getProduct().getName());
+                out.writeInt(item.getQuantity());
+                out.writeLong(item.getCurrentPrice());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Reads just the id, so find() can skip the other records without decoding them
+    private static String decodeOrderId(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readByte();
+        return in.readUTF();
+    }
+
+    // Lines come back as the product name and the price actually charged, not today's catalog entry
+    private static Order decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION && version != DOUBLE_AMOUNTS_VERSION) {
+            throw new IOException("Unsupported order journal record version");
+        }
+        String orderId = in.readUTF();
+        String email = in.readUTF();
+        String paymentMethod = in.readUTF();
+        long total = readAmount(in, version);
+        int lineCount = in.readInt();
+        List<CartItem> items = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            String productId = in.readUTF();
+            String name = in.readUTF();
+            int quantity = in.readInt();
+            long price = readAmount(in, version);
+            items.add(new CartItem(new Product.Builder(productId, name).basePrice(price).build(), quantity));
+        }
+        return new Order(orderId, email, items, total, paymentMethod);
+    }
+
+    private static long readAmount(DataInputStream in, byte version) throws IOException {
+        return version == DOUBLE_AMOUNTS_VERSION
+            ? Money.fromDecimal(in.readDouble(), RoundingMode.HALF_EVEN)
+            : in.readLong();
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static class CorruptRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long validBytes;
+
+        Segment(Path path, long validBytes) {
+            this.path = path;
+            this.validBytes = validBytes;
+        }
+    }
+
+    private static class PendingRecord {
+        private final byte[] bytes;
+        private final CompletableFuture<Void> durable;
+
+        PendingRecord(byte[] bytes, CompletableFuture<Void> durable) {
+            this.bytes = bytes;
+            this.durable = durable;
+        }
+    }
+}
@@ -1,19 +1,24 @@
 package com.ecommerce.strategy;
 
+import com.ecommerce.model.Money;
+import java.math.RoundingMode;
+
 //Bulk discount strategy - discount applies when quantity threshold is met
 public class BulkDiscountStrategy implements DiscountStrategy {
     private int threshold;
     private double discountPercentage;
+    private long basisPoints;
     
     public BulkDiscountStrategy(int threshold, double discountPercentage) {
         this.threshold = threshold;
         this.discountPercentage = discountPercentage;
+        this.basisPoints = Money.basisPoints(discountPercentage);
     }
     
     @Override
-    public double calculateDiscount(double originalPrice, int quantity) {
+    public long calculateDiscount(long originalPrice, int quantity) {
         if (quantity >= threshold) {
-            return originalPrice * quantity * (discountPercentage / 100.0);
+            return Money.percentage(Money.times(originalPrice, quantity), basisPoints, RoundingMode.HALF_EVEN);
         }
         return 0;
     }
@@ -22,5 +27,12 @@ public class BulkDiscountStrategy implements DiscountStrategy {
     public String getDescription() {
         return discountPercentage + "% off when buying " + threshold + " or more";
     }
+    
+    public int getThreshold() {
+        return threshold;
+    }
+    
+    public double getDiscountPercentage() {
+        return discountPercentage;
+    }
 }
-
@@ -1,9 +1,9 @@
 package com.ecommerce.strategy;
 
 //Strategy interface for discount algorithms
+//Prices and discounts are in cents (see Money)
 
 public interface DiscountStrategy {
-    double calculateDiscount(double originalPrice, int quantity);
+    long calculateDiscount(long originalPrice, int quantity);
     String getDescription();
 }
-
@@ -1,21 +1,27 @@
 package com.ecommerce.strategy;
 
+import com.ecommerce.model.Money;
+
 //Fixed amount discount strategy
 public class FixedAmountDiscountStrategy implements DiscountStrategy {
-    private double fixedAmount;
+    private long fixedAmount;
     
-    public FixedAmountDiscountStrategy(double fixedAmount) {
+    // fixedAmount is in cents
+    public FixedAmountDiscountStrategy(long fixedAmount) {
         this.fixedAmount = fixedAmount;
     }
     
     @Override
-    public double calculateDiscount(double originalPrice, int quantity) {
-        return fixedAmount * quantity;
+    public long calculateDiscount(long originalPrice, int quantity) {
+        return Money.times(fixedAmount, quantity);
     }
     
     @Override
     public String getDescription() {
-        return "$" + fixedAmount + " off per item";
+        return "$" + Money.format(fixedAmount) + " off per item";
+    }
+    
+    public long getFixedAmount() {
+        return fixedAmount;
     }
 }
-
@@ -1,21 +1,29 @@
 package com.ecommerce.strategy;
 
+import com.ecommerce.model.Money;
+import java.math.RoundingMode;
+
 //Percentage-based discount strategy
 public class PercentageDiscountStrategy implements DiscountStrategy {
     private double percentage;
+    private long basisPoints;
     
     public PercentageDiscountStrategy(double percentage) {
         this.percentage = percentage;
+        this.basisPoints = Money.basisPoints(percentage);
     }
     
     @Override
-    public double calculateDiscount(double originalPrice, int quantity) {
-        return originalPrice * quantity * (percentage / 100.0);
+    public long calculateDiscount(long originalPrice, int quantity) {
+        return Money.percentage(Money.times(originalPrice, quantity), basisPoints, RoundingMode.HALF_EVEN);
     }
     
     @Override
     public String getDescription() {
         return percentage + "% off";
     }
+    
+    public double getPercentage() {
+        return percentage;
+    }
 }
-
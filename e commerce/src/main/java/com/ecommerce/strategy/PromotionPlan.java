@@ -0,0 +1,209 @@
+package com.ecommerce.strategy;
+
+import com.ecommerce.model.Money;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+//A stack of promotions compiled into flat arrays, ordered by priority and then by the order
+//they were given in. Evaluating a line is one loop over primitive arrays and a switch, instead
+//of a virtual call per strategy, so a whole cart is discounted in a single pass.
+//Stacking: each line rule discounts what earlier rules left of the line, a cart rule discounts
+//what is left of the cart after line discounts and earlier cart rules, and nothing goes below zero.
+//All amounts are cents and percentages are basis points, and each percentage is rounded half-even
+//to the cent. Immutable, so one plan can be shared by any number of carts.
+public final class PromotionPlan implements DiscountStrategy {
+    public static final PromotionPlan EMPTY = compile(List.of());
+
+    private static final byte PERCENTAGE = 0;
+    private static final byte FIXED = 1;
+    private static final byte BULK = 2;
+    private static final byte STRATEGY = 3;
+
+    // Line rules, in evaluation order
+    private final byte[] ops;
+    private final long[] amounts;       // basis points for percentages, cents for fixed
+    private final int[] thresholds;
+    private final String[] categories;  // null matches every line
+    private final boolean[] exclusive;
+    private final DiscountStrategy[] strategies;
+    private final boolean hasCategories;
+
+    // Cart rules, in evaluation order
+    private final long[] cartMinimums;
+    private final long[] cartBasisPoints;
+    private final long[] cartAmounts;
+    private final boolean[] cartExclusive;
+
+    private final String description;
+
+    private PromotionPlan(int lineRules, int cartRules, boolean hasCategories, String description) {
+        ops = new byte[lineRules];
+        amounts = new long[lineRules];
+        thresholds = new int[lineRules];
+        categories = new String[lineRules];
+        exclusive = new boolean[lineRules];
+        strategies = new DiscountStrategy[lineRules];
+        cartMinimums = new long[cartRules];
+        cartBasisPoints = new long[cartRules];
+        cartAmounts = new long[cartRules];
+        cartExclusive = new boolean[cartRules];
+        this.hasCategories = hasCategories;
+        this.description = description;
+    }
+
+    public static PromotionPlan compile(List<PromotionRule> rules) {
+        // List.sort is stable, so equal priorities keep the order they were given in
+        List<PromotionRule> ordered = new ArrayList<>(rules);
+        ordered.sort(Comparator.comparingInt(PromotionRule::getPriority));
+
+        int cartRules = 0;
+        boolean hasCategories = false;
+        List<String> descriptions = new ArrayList<>();
+        List<String> cartDescriptions = new ArrayList<>();
+        for (PromotionRule rule : ordered) {
+            if (rule.getType().isCartLevel()) {
+                cartRules++;
+                cartDescriptions.add(rule.getDescription());
+            } else {
+                descriptions.add(rule.getDescription());
+            }
+            hasCategories |= rule.getCategory() != null;
+        }
+        // Listed in the order they apply: every line rule comes before any cart rule
+        descriptions.addAll(cartDescriptions);
+        PromotionPlan plan = new PromotionPlan(ordered.size() - cartRules, cartRules, hasCategories,
+            descriptions.isEmpty() ? "No discount" : String.join(", then ", descriptions));
+
+        int line = 0;
+        int cart = 0;
+        for (PromotionRule rule : ordered) {
+            switch (rule.getType()) {
+                case CART_PERCENTAGE:
+                case CART_FIXED:
+                    plan.cartMinimums[cart] = rule.getMinSubtotal();
+                    if (rule.getType() == PromotionRule.Type.CART_PERCENTAGE) {
+                        plan.cartBasisPoints[cart] = rule.getAmount();
+                    } else {
+                        plan.cartAmounts[cart] = rule.getAmount();
+                    }
+                    plan.cartExclusive[cart++] = rule.isExclusive();
+                    break;
+                default:
+                    plan.ops[line] = rule.getType() == PromotionRule.Type.FIXED ? FIXED
+                        : rule.getType() == PromotionRule.Type.BULK ? BULK : PERCENTAGE;
+                    plan.amounts[line] = rule.getAmount();
+                    plan.thresholds[line] = rule.getThreshold();
+                    plan.categories[line] = rule.getCategory();
+                    plan.exclusive[line++] = rule.isExclusive();
+            }
+        }
+        return plan;
+    }
+
+    // The built-in strategies become rules; any other strategy is called as it is
+    public static PromotionPlan of(DiscountStrategy strategy) {
+        if (strategy == null) {
+            return EMPTY;
+        }
+        if (strategy instanceof PromotionPlan) {
+            return (PromotionPlan) strategy;
+        }
+        PromotionRule rule = null;
+        if (strategy instanceof PercentageDiscountStrategy) {
+            double percentage = ((PercentageDiscountStrategy) strategy).getPercentage();
+            if (percentage >= 0 && percentage <= 100) {
+                rule = PromotionRule.percentage(percentage).build();
+            }
+        } else if (strategy instanceof FixedAmountDiscountStrategy) {
+            long amount = ((FixedAmountDiscountStrategy) strategy).getFixedAmount();
+            if (amount >= 0) {
+                rule = PromotionRule.fixed(amount).build();
+            }
+        } else if (strategy instanceof BulkDiscountStrategy) {
+            BulkDiscountStrategy bulk = (BulkDiscountStrategy) strategy;
+            if (bulk.getDiscountPercentage() >= 0 && bulk.getDiscountPercentage() <= 100 && bulk.getThreshold() >= 1) {
+                rule = PromotionRule.bulk(bulk.getDiscountPercentage(), bulk.getThreshold()).build();
+            }
+        }
+        if (rule != null) {
+            return compile(List.of(rule));
+        }
+        PromotionPlan plan = new PromotionPlan(1, 0, false, strategy.getDescription());
+        plan.ops[0] = STRATEGY;
+        plan.strategies[0] = strategy;
+        return plan;
+    }
+
+    // Discount for one line; category is the product's "category" configuration, or null
+    public long lineDiscount(long price, int quantity, String category) {
+        long gross = Money.times(price, quantity);
+        long remaining = gross;
+        for (int i = 0; i < ops.length && remaining > 0; i++) {
+            if (hasCategories && categories[i] != null && !categories[i].equalsIgnoreCase(category)) {
+                continue;
+            }
+            long discount;
+            switch (ops[i]) {
+                case PERCENTAGE:
+                    discount = Money.percentage(remaining, amounts[i], RoundingMode.HALF_EVEN);
+                    break;
+                case FIXED:
+                    discount = Money.times(amounts[i], quantity);
+                    break;
+                case BULK:
+                    discount = quantity >= thresholds[i] ? Money.percentage(remaining, amounts[i], RoundingMode.HALF_EVEN) : 0;
+                    break;
+                default:
+                    discount = strategies[i].calculateDiscount(price, quantity);
+            }
+            if (discount <= 0) {
+                continue;
+            }
+            remaining -= Math.min(discount, remaining);
+            if (exclusive[i]) {
+                break;
+            }
+        }
+        return gross - remaining;
+    }
+
+    // Discount on the whole cart, given its total after line discounts
+    public long cartDiscount(long total) {
+        long remaining = total;
+        for (int i = 0; i < cartMinimums.length && remaining > 0; i++) {
+            if (total < cartMinimums[i]) {
+                continue;
+            }
+            long discount = Money.percentage(remaining, cartBasisPoints[i], RoundingMode.HALF_EVEN) + cartAmounts[i];
+            if (discount <= 0) {
+                continue;
+            }
+            remaining -= Math.min(discount, remaining);
+            if (cartExclusive[i]) {
+                break;
+            }
+        }
+        return total - remaining;
+    }
+
+    public boolean hasCartRules() {
+        return cartMinimums.length > 0;
+    }
+
+    public int getRuleCount() {
+        return ops.length + cartMinimums.length;
+    }
+
+    // Line rules only, without categories, so the plan can stand in for a single strategy
+    @Override
+    public long calculateDiscount(long originalPrice, int quantity) {
+        return lineDiscount(originalPrice, quantity, null);
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,159 @@
+package com.ecommerce.strategy;
+
+import com.ecommerce.model.Money;
+import java.math.BigDecimal;
+
+//One promotion in a stack, built with a Builder and compiled together with the others into a PromotionPlan.
+//Line rules discount each cart line; cart rules discount the whole cart once its total after
+//line discounts reaches a minimum. Lower priority values apply first.
+//Amounts are integral: percentages in basis points, money in cents (see Money).
+public class PromotionRule {
+    public enum Type {
+        PERCENTAGE,      // amount is a percentage off the line
+        FIXED,           // amount off each unit
+        BULK,            // amount is a percentage off the line when at least threshold units are bought
+        CART_PERCENTAGE, // amount is a percentage off the cart when it reaches minSubtotal
+        CART_FIXED;      // amount off the cart when it reaches minSubtotal
+
+        public boolean isCartLevel() {
+            return this == CART_PERCENTAGE || this == CART_FIXED;
+        }
+
+        public boolean isPercentage() {
+            return this == PERCENTAGE || this == BULK || this == CART_PERCENTAGE;
+        }
+    }
+
+    private final Type type;
+    private final long amount;
+    private final int threshold;
+    private final long minSubtotal;
+    private final String category;
+    private final int priority;
+    private final boolean exclusive;
+
+    private PromotionRule(Builder builder) {
+        this.type = builder.type;
+        this.amount = builder.amount;
+        this.threshold = builder.threshold;
+        this.minSubtotal = builder.minSubtotal;
+        this.category = builder.category;
+        this.priority = builder.priority;
+        this.exclusive = builder.exclusive;
+    }
+
+    public static Builder percentage(double percent) {
+        return new Builder(Type.PERCENTAGE, Money.basisPoints(percent));
+    }
+
+    public static Builder fixed(long cents) {
+        return new Builder(Type.FIXED, cents);
+    }
+
+    public static Builder bulk(double percent, int threshold) {
+        return new Builder(Type.BULK, Money.basisPoints(percent)).threshold(threshold);
+    }
+
+    public static Builder cartPercentage(double percent, long minSubtotal) {
+        return new Builder(Type.CART_PERCENTAGE, Money.basisPoints(percent)).minSubtotal(minSubtotal);
+    }
+
+    public static Builder cartFixed(long cents, long minSubtotal) {
+        return new Builder(Type.CART_FIXED, cents).minSubtotal(minSubtotal);
+    }
+
+    public Type getType() { return type; }
+    // Basis points for percentage rules, cents otherwise
+    public long getAmount() { return amount; }
+    public int getThreshold() { return threshold; }
+    public long getMinSubtotal() { return minSubtotal; }
+    public String getCategory() { return category; }
+    public int getPriority() { return priority; }
+    public boolean isExclusive() { return exclusive; }
+
+    public String getDescription() {
+        String value = type.isPercentage()
+            ? BigDecimal.valueOf(amount, 2).stripTrailingZeros().toPlainString() + "%"
+            : "$" + Money.format(amount);
+        String description;
+        switch (type) {
+            case PERCENTAGE:
+                description = value + " off";
+                break;
+            case FIXED:
+                description = value + " off per item";
+                break;
+            case BULK:
+                description = value + " off when buying " + threshold + " or more";
+                break;
+            default:
+                description = value + " off orders of $" + Money.format(minSubtotal) + " or more";
+        }
+        if (category != null) {
+            description += " on " + category;
+        }
+        return description;
+    }
+
+    public static class Builder {
+        private final Type type;
+        private final long amount;
+        private int threshold;
+        private long minSubtotal;
+        private String category;
+        private int priority;
+        private boolean exclusive;
+
+        public Builder(Type type, long amount) {
+            if (type == null) {
+                throw new IllegalArgumentException("Promotion type is required");
+            }
+            if (amount < 0) {
+                throw new IllegalArgumentException("Promotion amount must not be negative");
+            }
+            if (type.isPercentage() && amount > 100 * Money.BASIS_POINTS_PER_PERCENT) {
+                throw new IllegalArgumentException("Percentage must not exceed 100");
+            }
+            this.type = type;
+            this.amount = amount;
+        }
+
+        public Builder threshold(int threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        // In cents
+        public Builder minSubtotal(long minSubtotal) {
+            this.minSubtotal = minSubtotal;
+            return this;
+        }
+
+        // Only lines whose product has this "category" configuration (any case); line rules only
+        public Builder category(String category) {
+            this.category = category == null || category.isBlank() ? null : category.trim();
+            return this;
+        }
+
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        // Once an exclusive rule gives a discount, later rules at the same level are skipped
+        public Builder exclusive(boolean exclusive) {
+            this.exclusive = exclusive;
+            return this;
+        }
+
+        public PromotionRule build() {
+            if (category != null && type.isCartLevel()) {
+                throw new IllegalArgumentException("Cart rules cannot be limited to a category");
+            }
+            if (type == Type.BULK && threshold < 1) {
+                throw new IllegalArgumentException("Bulk rules need a threshold of at least 1");
+            }
+            return new PromotionRule(this);
+        }
+    }
+}
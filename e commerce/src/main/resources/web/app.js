@@ -8,7 +8,64 @@ async function init() {
     await loadProducts();
     await loadCart();
     setupDiscountTypeChange();
-    setInterval(loadCart, 2000); // Poll for updates every 2 seconds (Observer pattern simulation)
+    subscribeToUpdates();
+}
+
+let pollTimer = null;
+// Idempotency key of the checkout being attempted; kept across retries until a final answer arrives
+let checkoutKey = null;
+
+// Server-Sent Events push cart and product changes (Observer pattern over HTTP).
+// Falls back to polling while the stream is unavailable; EventSource reconnects by itself.
+function subscribeToUpdates() {
+    if (!window.EventSource) {
+        startPolling();
+        return;
+    }
+    const source = new EventSource(`${API_BASE}/events`);
+    source.addEventListener('open', stopPolling);
+    source.addEventListener('error', startPolling);
+    source.addEventListener('cart', event => applyCartEvent(JSON.parse(event.data)));
+    source.addEventListener('product', event => applyProductEvent(JSON.parse(event.data)));
+    source.addEventListener('catalog', loadProducts);
+}
+
+function startPolling() {
+    if (!pollTimer) {
+        pollTimer = setInterval(loadCart, 2000);
+    }
+}
+
+function stopPolling() {
+    if (pollTimer) {
+        clearInterval(pollTimer);
+        pollTimer = null;
+    }
+}
+
+function applyCartEvent(change) {
+    if (change.type === 'full') {
+        cart = { items: change.items, subtotal: change.subtotal, discount: change.discount, total: change.total };
+    } else {
+        const items = cart.items.filter(item => item.productId !== change.productId);
+        if (change.line) {
+            const index = cart.items.findIndex(item => item.productId === change.productId);
+            items.splice(index >= 0 ? index : items.length, 0, change.line);
+        }
+        cart = { items, subtotal: change.subtotal, discount: change.discount, total: change.total };
+    }
+    displayCart();
+}
+
+function applyProductEvent(change) {
+    const product = products.find(p => p.id === change.id);
+    if (!product) {
+        loadProducts();
+        return;
+    }
+    product.basePrice = change.basePrice;
+    product.stock = change.stock;
+    displayProducts();
 }
 
 // Load products from API
@@ -66,6 +123,9 @@ async function addToCart(productId) {
             showNotification('Product added to cart!');
             await loadCart();
             await loadProducts(); // Refresh to update stock
+        } else {
+            const data = await response.json();
+            showNotification(data.error || 'Error adding product to cart', 'error');
         }
     } catch (error) {
         console.error('Error adding to cart:', error);
@@ -134,6 +194,11 @@ async function updateQuantity(productId, quantity) {
         
         if (response.ok) {
             await loadCart();
+            await loadProducts(); // Held stock changed
+        } else {
+            const data = await response.json();
+            showNotification(data.error || 'Error updating quantity', 'error');
+            await loadCart();
         }
     } catch (error) {
         console.error('Error updating quantity:', error);
@@ -261,10 +326,16 @@ async function checkout() {
         return;
     }
     
+    if (!checkoutKey) {
+        checkoutKey = window.crypto && crypto.randomUUID
+            ? crypto.randomUUID()
+            : `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}`;
+    }
+    
     try {
         const response = await fetch(`${API_BASE}/checkout`, {
             method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
+            headers: { 'Content-Type': 'application/json', 'Idempotency-Key': checkoutKey },
             body: JSON.stringify({
                 email: email,
                 paymentMethod: paymentMethod,
@@ -274,6 +345,10 @@ async function checkout() {
         
         const data = await response.json();
         const resultDiv = document.getElementById('checkout-result');
+        // 409 and 503 mean the same checkout may be retried; anything else is its final answer
+        if (response.status !== 409 && response.status !== 503) {
+            checkoutKey = null;
+        }
         
         if (response.ok && data.success) {
             resultDiv.innerHTML = `
@@ -286,6 +361,16 @@ async function checkout() {
             `;
             showNotification('Order confirmed! Check your email.');
             await loadCart(); // Cart should be empty now
+        } else if (response.status === 202 && data.pending) {
+            // The provider may still charge; the cart stays locked until it answers
+            resultDiv.innerHTML = `
+                <div class="checkout-success">
+                    <h4>Payment Pending</h4>
+                    <p><strong>Order ID:</strong> ${data.orderId}</p>
+                    <p>${data.message}</p>
+                </div>
+            `;
+            showNotification('Payment is still being confirmed');
         } else {
             resultDiv.innerHTML = `
                 <div class="checkout-error">